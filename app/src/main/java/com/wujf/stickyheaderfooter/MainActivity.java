@@ -54,13 +54,6 @@ public class MainActivity extends AppCompatActivity {
         StickyRecyclerTouchListener touchListener =
                 new StickyRecyclerTouchListener(recyclerView, decor);
         recyclerView.addOnItemTouchListener(touchListener);
-        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
-            @Override
-            public void onChanged() {
-                decor.invalidateHeaders();
-                decor.invalidateFooters();
-            }
-        });
     }
 
     private String[] getDummyDataSet() {
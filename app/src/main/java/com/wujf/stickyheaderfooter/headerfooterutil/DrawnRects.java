@@ -0,0 +1,237 @@
+package com.wujf.stickyheaderfooter.headerfooterutil;
+
+import android.graphics.Rect;
+import android.view.View;
+
+import java.util.Arrays;
+
+/**
+ * The headers or footers drawn during the last frame with their ids and bounds, keyed by adapter
+ * position and sorted by it. The store is cleared at the start of every frame and reuses its Rects,
+ * so its size follows the number of sections on screen instead of the number of positions ever drawn.
+ * <p>
+ * For hit testing, the rects are also kept as intervals sorted by their start along the scroll axis,
+ * with the running maximum of their ends, so that finding the rects under a point is a binary search
+ * followed by a walk over the few intervals that can still reach it.
+ */
+final class DrawnRects {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] mPositions = new int[INITIAL_CAPACITY];
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private View[] mViews = new View[INITIAL_CAPACITY];
+    private Rect[] mRects = newRects(INITIAL_CAPACITY);
+    private int mSize;
+
+    /**
+     * Indices of the rects sorted by start along the scroll axis, and the largest end among the
+     * intervals up to each one. Rebuilt lazily after the rects change.
+     */
+    private int[] mOrder = new int[INITIAL_CAPACITY];
+    private int[] mMaxEnds = new int[INITIAL_CAPACITY];
+    private boolean mOrderValid;
+    private boolean mOrderVertical;
+
+    /**
+     * Indices of the rects found by the last {@link #findHits}, topmost first.
+     */
+    private int[] mHits = new int[INITIAL_CAPACITY];
+    private int mHitCount;
+
+    /**
+     * Forgets every rect, keeping them for reuse.
+     */
+    void clear() {
+        Arrays.fill(mViews, 0, mSize, null);
+        mSize = 0;
+        mOrderValid = false;
+    }
+
+    /**
+     * Records a header or footer drawn in the current frame and returns the rect to fill with its
+     * bounds. The rect is reused from a previous frame, its content is undefined.
+     *
+     * @param position adapter position the header or footer is drawn for
+     * @param id       id of the header or footer
+     * @param view     header or footer view
+     * @return a rect owned by the store
+     */
+    Rect obtain(int position, long id, View view) {
+        mOrderValid = false;
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index >= 0) {
+            mIds[index] = id;
+            mViews[index] = view;
+            return mRects[index];
+        }
+        index = -index - 1;
+        if (mSize == mPositions.length) {
+            // only grows when a single frame draws more rects than ever before
+            mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            mIds = Arrays.copyOf(mIds, mSize * 2);
+            mViews = Arrays.copyOf(mViews, mSize * 2);
+            mRects = Arrays.copyOf(mRects, mSize * 2);
+            for (int i = mSize; i < mRects.length; i++) {
+                mRects[i] = new Rect();
+            }
+        }
+        Rect rect = mRects[mSize];
+        System.arraycopy(mPositions, index, mPositions, index + 1, mSize - index);
+        System.arraycopy(mIds, index, mIds, index + 1, mSize - index);
+        System.arraycopy(mViews, index, mViews, index + 1, mSize - index);
+        System.arraycopy(mRects, index, mRects, index + 1, mSize - index);
+        mPositions[index] = position;
+        mIds[index] = id;
+        mViews[index] = view;
+        mRects[index] = rect;
+        mSize++;
+        return rect;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the index of the rect drawn for the position, or a negative number if none was
+     */
+    int indexOfPosition(int position) {
+        return Arrays.binarySearch(mPositions, 0, mSize, position);
+    }
+
+    int positionAt(int index) {
+        return mPositions[index];
+    }
+
+    long idAt(int index) {
+        return mIds[index];
+    }
+
+    View viewAt(int index) {
+        return mViews[index];
+    }
+
+    Rect rectAt(int index) {
+        return mRects[index];
+    }
+
+    /**
+     * Re-keys the rects after a structural change of the adapter. Rects of the removed positions are
+     * dropped and the ones after them are moved by {@code delta}.
+     */
+    void offsetPositions(int positionStart, int removedCount, int delta) {
+        mOrderValid = false;
+        int kept = 0;
+        for (int i = 0; i < mSize; i++) {
+            int position = mPositions[i];
+            if (position >= positionStart && position < positionStart + removedCount) {
+                continue;
+            }
+            if (position >= positionStart + removedCount) {
+                position += delta;
+            }
+            Rect rect = mRects[i];
+            mRects[i] = mRects[kept];
+            mRects[kept] = rect;
+            mPositions[kept] = position;
+            mIds[kept] = mIds[i];
+            mViews[kept] = mViews[i];
+            kept++;
+        }
+        Arrays.fill(mViews, kept, mSize, null);
+        mSize = kept;
+    }
+
+    /**
+     * Finds the rects containing a point, retrieved with {@link #hitAt(int)}. They are ordered topmost
+     * first: rects are drawn by increasing position, so the one drawn last wins.
+     *
+     * @param x        x-coordinate
+     * @param y        y-coordinate
+     * @param vertical true if the list scrolls vertically
+     * @return the number of rects containing the point
+     */
+    int findHits(int x, int y, boolean vertical) {
+        if (!mOrderValid || mOrderVertical != vertical) {
+            buildOrder(vertical);
+        }
+        mHitCount = 0;
+        int coordinate = vertical ? y : x;
+        // last interval starting at or before the coordinate
+        int low = 0;
+        int high = mSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getStart(mRects[mOrder[middle]], vertical) <= coordinate) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        for (int i = high; i >= 0 && mMaxEnds[i] > coordinate; i--) {
+            int index = mOrder[i];
+            if (mRects[index].contains(x, y)) {
+                addHit(index);
+            }
+        }
+        return mHitCount;
+    }
+
+    /**
+     * @param hit between 0 and the count returned by the last {@link #findHits}
+     * @return index of the rect, for {@link #positionAt(int)} and the other getters
+     */
+    int hitAt(int hit) {
+        return mHits[hit];
+    }
+
+    private void addHit(int index) {
+        if (mHitCount == mHits.length) {
+            mHits = Arrays.copyOf(mHits, mHitCount * 2);
+        }
+        // insertion by decreasing index, hits are few
+        int i = mHitCount++;
+        while (i > 0 && mHits[i - 1] < index) {
+            mHits[i] = mHits[i - 1];
+            i--;
+        }
+        mHits[i] = index;
+    }
+
+    private void buildOrder(boolean vertical) {
+        if (mOrder.length < mSize) {
+            mOrder = new int[mPositions.length];
+            mMaxEnds = new int[mPositions.length];
+        }
+        for (int i = 0; i < mSize; i++) {
+            int start = getStart(mRects[i], vertical);
+            int j = i;
+            while (j > 0 && getStart(mRects[mOrder[j - 1]], vertical) > start) {
+                mOrder[j] = mOrder[j - 1];
+                j--;
+            }
+            mOrder[j] = i;
+        }
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            Rect rect = mRects[mOrder[i]];
+            maxEnd = Math.max(maxEnd, vertical ? rect.bottom : rect.right);
+            mMaxEnds[i] = maxEnd;
+        }
+        mOrderVertical = vertical;
+        mOrderValid = true;
+    }
+
+    private static int getStart(Rect rect, boolean vertical) {
+        return vertical ? rect.top : rect.left;
+    }
+
+    private static Rect[] newRects(int capacity) {
+        Rect[] rects = new Rect[capacity];
+        for (int i = 0; i < capacity; i++) {
+            rects[i] = new Rect();
+        }
+        return rects;
+    }
+}
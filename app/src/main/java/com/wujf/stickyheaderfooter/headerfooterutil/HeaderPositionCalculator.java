@@ -11,7 +11,11 @@ import android.widget.LinearLayout;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.FooterProvider;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.HeaderProvider;
 import com.wujf.stickyheaderfooter.headerfooterutil.calculation.DimensionCalculator;
-import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
+import com.wujf.stickyheaderfooter.headerfooterutil.calculation.SectionIndex;
+import com.wujf.stickyheaderfooter.headerfooterutil.calculation.SectionIndexBuilder;
+import com.wujf.stickyheaderfooter.headerfooterutil.util.LayoutSnapshot;
+
+import java.util.Arrays;
 
 
 /**
@@ -20,10 +24,12 @@ import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 public class HeaderPositionCalculator {
 
     private final StickyRecyclerAdapter mAdapter;
-    private final OrientationProvider mOrientationProvider;
     private final HeaderProvider mHeaderProvider;
     private final DimensionCalculator mDimensionCalculator;
     private FooterProvider mFooterProvider;
+    private SectionIndex mSectionIndex;
+    private SectionIndexBuilder mSectionIndexBuilder;
+    private boolean mSectionIndexPending;
 
     /**
      * The following fields are used as buffers for internal calculations. Their sole purpose is to avoid
@@ -32,12 +38,26 @@ public class HeaderPositionCalculator {
     private final Rect mTempRect1 = new Rect();
     private final Rect mTempRect2 = new Rect();
 
+    /**
+     * The children visited by a placement pass in layout order, with their adapter positions and header
+     * ids, collected once so that the sticky header and footer scans do not ask for them again. Only
+     * the section boundaries are collected when possible: a sticky header or footer is only pushed by
+     * a child that ends or starts a section, so the scans find the same one among them.
+     * <p>
+     * They are kept until the next pass along with the bounds they had, four per child, so that
+     * {@link #isPlacementCurrent} can tell whether they moved since.
+     */
+    private View[] mChildren = new View[16];
+    private int[] mChildPositions = new int[16];
+    private long[] mChildHeaderIds = new long[16];
+    private int[] mChildBounds = new int[16 * 4];
+    private int mChildCount;
+
     public HeaderPositionCalculator(StickyRecyclerAdapter adapter, HeaderProvider headerProvider, FooterProvider footerProvider,
-                                    OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator) {
+                                    DimensionCalculator dimensionCalculator) {
         mAdapter = adapter;
         mHeaderProvider = headerProvider;
         mFooterProvider = footerProvider;
-        mOrientationProvider = orientationProvider;
         mDimensionCalculator = dimensionCalculator;
     }
 
@@ -63,7 +83,7 @@ public class HeaderPositionCalculator {
             margin = mTempRect1.left;
         }
 
-        return offset >= -itemView.getHeight() - mTempRect1.bottom && offset <= margin && mAdapter.getHeaderId(position) >= 0;
+        return offset >= -itemView.getHeight() - mTempRect1.bottom && offset <= margin && getHeaderId(position) >= 0;
         //return offset <= margin&& mAdapter.getHeaderId(position) >= 0;
     }
 
@@ -76,7 +96,7 @@ public class HeaderPositionCalculator {
         } else {
 
         }
-        return parent.getHeight() - margin <= offset && mAdapter.getHeaderId(position) >= 0;
+        return parent.getHeight() - margin <= offset && getHeaderId(position) >= 0;
     }
 
 
@@ -93,18 +113,12 @@ public class HeaderPositionCalculator {
             return false;
         }
 
-        long headerId = mAdapter.getHeaderId(position);
-
-        if (headerId < 0) {
-            return false;
+        SectionIndex sectionIndex = getSectionIndex();
+        if (sectionIndex != null) {
+            boolean isBoundary = isReverseLayout ? sectionIndex.isSectionEnd(position) : sectionIndex.isSectionStart(position);
+            return isBoundary && sectionIndex.getHeaderId(position) >= 0;
         }
-
-        long nextItemHeaderId = -1;
-        int nextItemPosition = position + (isReverseLayout ? 1 : -1);
-        if (!indexOutOfBounds(nextItemPosition)) {
-            nextItemHeaderId = mAdapter.getHeaderId(nextItemPosition);
-        }
-        return headerId != nextItemHeaderId;
+        return hasDifferentHeaderId(position, position + (isReverseLayout ? 1 : -1));
     }
 
     public boolean hasNewFooter(int position, boolean isReverseLayout) {
@@ -112,45 +126,371 @@ public class HeaderPositionCalculator {
             return false;
         }
 
+        SectionIndex sectionIndex = getSectionIndex();
+        if (sectionIndex != null) {
+            boolean isBoundary = isReverseLayout ? sectionIndex.isSectionStart(position) : sectionIndex.isSectionEnd(position);
+            return isBoundary && sectionIndex.getHeaderId(position) >= 0;
+        }
+        return hasDifferentHeaderId(position, position + (isReverseLayout ? -1 : 1));
+    }
+
+    /**
+     * Compares the header id of a position with the one of its neighbour by asking the adapter. Used
+     * while no section index is available.
+     */
+    private boolean hasDifferentHeaderId(int position, int neighbourPosition) {
         long headerId = mAdapter.getHeaderId(position);
 
         if (headerId < 0) {
             return false;
         }
 
-        long nextItemHeaderId = -1;
-        int nextItemPosition = position + (isReverseLayout ? -1 : 1);
-        if (!indexOutOfBounds(nextItemPosition)) {
-            nextItemHeaderId = mAdapter.getHeaderId(nextItemPosition);
+        long neighbourHeaderId = -1;
+        if (!indexOutOfBounds(neighbourPosition)) {
+            neighbourHeaderId = mAdapter.getHeaderId(neighbourPosition);
+        }
+        return headerId != neighbourHeaderId;
+    }
+
+    /**
+     * @param position adapter position
+     * @return the header id of the position, from the section index when available
+     */
+    public long getHeaderId(int position) {
+        SectionIndex sectionIndex = getSectionIndex();
+        return sectionIndex != null ? sectionIndex.getHeaderId(position) : mAdapter.getHeaderId(position);
+    }
+
+    /**
+     * Returns the section index of the current data set, building it on first use. The index is
+     * updated in place from the {@code onItemRange*} callbacks and rebuilt when the item count no
+     * longer matches or after {@link #invalidateSectionIndex()}.
+     * <p>
+     * With a {@link SectionIndexBuilder} set, the index is built in the background and this returns
+     * null until it has been delivered; callers then ask the adapter directly.
+     *
+     * @return the section index for the adapter, or null while it is being built
+     */
+    public SectionIndex getSectionIndex() {
+        int itemCount = mAdapter.getItemCount();
+        if (mSectionIndex != null && mSectionIndex.getItemCount() == itemCount) {
+            mSectionIndex.refresh(mAdapter);
+            return mSectionIndex;
+        }
+        if (mSectionIndexBuilder == null) {
+            mSectionIndex = SectionIndex.build(mAdapter, itemCount);
+            return mSectionIndex;
+        }
+        mSectionIndex = null;
+        if (!mSectionIndexPending) {
+            mSectionIndexPending = true;
+            mSectionIndexBuilder.build(itemCount, new SectionIndexBuilder.Callback() {
+                @Override
+                public void onSectionIndexBuilt(SectionIndex sectionIndex) {
+                    mSectionIndexPending = false;
+                    if (sectionIndex.getItemCount() == mAdapter.getItemCount()) {
+                        mSectionIndex = sectionIndex;
+                    }
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Builds the section index in the background with the given builder instead of on first use.
+     *
+     * @param builder to build the index with, or null to build it synchronously
+     */
+    public void setSectionIndexBuilder(SectionIndexBuilder builder) {
+        invalidateSectionIndex();
+        mSectionIndexBuilder = builder;
+    }
+
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeMoved(fromPosition, toPosition, itemCount);
+        }
+    }
+
+    /**
+     * Drops the section index so that it is rebuilt from the adapter on next use.
+     */
+    public void invalidateSectionIndex() {
+        cancelPendingSectionIndex();
+        mSectionIndex = null;
+    }
+
+    /**
+     * Drops a background build that no longer matches the data set; a new one is started on next use.
+     */
+    private void cancelPendingSectionIndex() {
+        if (mSectionIndexPending) {
+            mSectionIndexBuilder.cancel();
+            mSectionIndexPending = false;
+        }
+    }
+
+    /**
+     * Fills {@code outMargins} with the margins of the header of a position and returns its size along
+     * the scroll direction. Uses the fixed size declared by the adapter when there is one, so that the
+     * header view is not created or measured.
+     *
+     * @param layout     of the list that displays the header
+     * @param position   that is headed by the header
+     * @param outMargins receives the margins of the header
+     * @return the height of the header in a vertical list, its width in a horizontal one
+     */
+    public int getHeaderExtent(LayoutSnapshot layout, int position, Rect outMargins) {
+        outMargins.setEmpty();
+        int extent = mAdapter.getFixedHeaderExtent(outMargins);
+        if (extent >= 0) {
+            return extent;
         }
-        return headerId != nextItemHeaderId;
+        View header = mHeaderProvider.getHeader(layout.getRecyclerView(), position);
+        mDimensionCalculator.initMargins(outMargins, header);
+        return layout.getOrientation() == LinearLayoutManager.VERTICAL
+                ? header.getHeight() : header.getWidth();
+    }
+
+    /**
+     * Same as {@link #getHeaderExtent(LayoutSnapshot, int, Rect)}, for footers.
+     */
+    public int getFooterExtent(LayoutSnapshot layout, int position, Rect outMargins) {
+        outMargins.setEmpty();
+        int extent = mAdapter.getFixedFooterExtent(outMargins);
+        if (extent >= 0) {
+            return extent;
+        }
+        View footer = mFooterProvider.getFooter(layout.getRecyclerView(), position);
+        mDimensionCalculator.initMargins(outMargins, footer);
+        return layout.getOrientation() == LinearLayoutManager.VERTICAL
+                ? footer.getHeight() : footer.getWidth();
     }
 
     private boolean indexOutOfBounds(int position) {
         return position < 0 || position >= mAdapter.getItemCount();
     }
 
-    public void initHeaderBounds(Rect bounds, RecyclerView recyclerView, View header, View firstView, boolean firstHeader) {
-        int orientation = mOrientationProvider.getOrientation(recyclerView);
-        initDefaultHeaderOffset(bounds, recyclerView, header, firstView, orientation);
-        if (firstHeader && isStickyHeaderBeingPushedOffscreen(recyclerView, header)) {
-            View lastViewObscuredByHeader = getLastViewObscuredByHeader(recyclerView, header);
-            translateHeaderWithLastViewObscureByHeader(recyclerView, mOrientationProvider.getOrientation(recyclerView), bounds,
-                    header, lastViewObscuredByHeader);
+    /**
+     * Places every header and footer of the frame in a single pass: the inline ones at section
+     * boundaries and the sticky ones along with their push-off translation. With a section index and
+     * the visible positions of a {@link LinearLayoutManager}, only the children that start or end a
+     * section are visited, the first and last visible children standing for the sections cut by the
+     * edges, which carry the sticky header and footer. No other child can have a new or a sticky header
+     * or footer, so the cost scales with the visible sections instead of the visible children. Without
+     * them every child is visited. The sticky scans reuse the positions and header ids collected for
+     * the pass.
+     *
+     * @param layout  of the list, captured for the frame
+     * @param headers receives the headers to draw with their bounds
+     * @param footers receives the footers to draw with their bounds
+     */
+    void placeDecorations(LayoutSnapshot layout, DrawnRects headers, DrawnRects footers) {
+        RecyclerView parent = layout.getRecyclerView();
+        Arrays.fill(mChildren, 0, mChildCount, null);
+        if (!collectSectionBoundaries(layout)) {
+            collectChildren(layout);
+        }
+        for (int i = 0; i < mChildCount; i++) {
+            int position = mChildPositions[i];
+            long headerId = mChildHeaderIds[i];
+            if (headerId < 0) {
+                // no header, no footer either
+                continue;
+            }
+            View itemView = mChildren[i];
+            boolean stickyHeader = hasStickyHeader(itemView, layout.getOrientation(), position);
+            if (stickyHeader || hasNewHeader(position, layout.isReverseLayout())) {
+                View header = mHeaderProvider.getHeader(parent, position);
+                Rect bounds = headers.obtain(position, headerId, header);
+                initDefaultHeaderOffset(bounds, layout, header, itemView);
+                if (stickyHeader) {
+                    pushStickyHeader(layout, bounds, header, headerId);
+                }
+            }
+            boolean stickyFooter = hasStickyFooter(parent, itemView, layout.getOrientation(), position);
+            if (stickyFooter || hasNewFooter(position, layout.isReverseLayout())) {
+                long footerId = mAdapter.getFooterId(position);
+                View footer = mFooterProvider.getFooter(parent, position);
+                Rect bounds = footers.obtain(position, footerId, footer);
+                initDefaultFooterOffset(bounds, layout, footer, itemView);
+                if (stickyFooter) {
+                    pushStickyFooter(layout, bounds, footer, footerId);
+                }
+            }
+        }
+        for (int i = 0; i < mChildCount; i++) {
+            View child = mChildren[i];
+            mChildBounds[i * 4] = child.getLeft();
+            mChildBounds[i * 4 + 1] = child.getTop();
+            mChildBounds[i * 4 + 2] = child.getRight();
+            mChildBounds[i * 4 + 3] = child.getBottom();
+        }
+    }
+
+    /**
+     * Tells whether the children the last placement was computed from are still attached at the same
+     * adapter positions and bounds. A relayout can move them without changing the edges of the list,
+     * for instance when an item grows by what the one above it shrank, or after a
+     * {@code requestLayout()} without any adapter notification.
+     *
+     * @param parent the list the placement was computed for
+     * @return false if the headers and footers must be placed again
+     */
+    boolean isPlacementCurrent(RecyclerView parent) {
+        for (int i = 0; i < mChildCount; i++) {
+            View child = mChildren[i];
+            if (child.getParent() != parent
+                    || parent.getChildAdapterPosition(child) != mChildPositions[i]
+                    || child.getLeft() != mChildBounds[i * 4]
+                    || child.getTop() != mChildBounds[i * 4 + 1]
+                    || child.getRight() != mChildBounds[i * 4 + 2]
+                    || child.getBottom() != mChildBounds[i * 4 + 3]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects, in layout order, the first and last visible child of every visible section.
+     *
+     * @return false if the section index or the visible positions are not available, nothing is
+     * collected then
+     */
+    private boolean collectSectionBoundaries(LayoutSnapshot layout) {
+        int firstPosition = layout.getFirstPosition();
+        int lastPosition = layout.getLastPosition();
+        if (firstPosition == RecyclerView.NO_POSITION) {
+            return false;
+        }
+        SectionIndex sectionIndex = getSectionIndex();
+        if (sectionIndex == null) {
+            return false;
+        }
+        int firstSection = sectionIndex.getSectionForPosition(firstPosition);
+        int lastSection = sectionIndex.getSectionForPosition(lastPosition);
+        if (firstSection < 0 || lastSection < 0) {
+            return false;
+        }
+        RecyclerView parent = layout.getRecyclerView();
+        // the visible positions are only captured from a LinearLayoutManager
+        LinearLayoutManager layoutManager = (LinearLayoutManager) parent.getLayoutManager();
+        ensureChildCapacity(2 * (lastSection - firstSection + 1));
+        mChildCount = 0;
+        int lastVisited = RecyclerView.NO_POSITION;
+        for (int section = firstSection; section <= lastSection; section++) {
+            int start = Math.max(sectionIndex.getSectionStart(section), firstPosition);
+            int end = Math.min(sectionIndex.getSectionEnd(section), lastPosition);
+            lastVisited = collectChildAt(parent, layoutManager, start, sectionIndex.getSectionId(section), lastVisited);
+            lastVisited = collectChildAt(parent, layoutManager, end, sectionIndex.getSectionId(section), lastVisited);
         }
+        if (layout.isReverseLayout()) {
+            for (int i = 0, j = mChildCount - 1; i < j; i++, j--) {
+                swapChildren(i, j);
+            }
+        }
+        return true;
     }
 
-    public void initFooterBounds(Rect bounds, RecyclerView recyclerView, View footer, View firstView, boolean firstFooter) {
-        int orientation = mOrientationProvider.getOrientation(recyclerView);
-        initDefaultFooterOffset(bounds, recyclerView, footer, firstView, orientation);
-        if (firstFooter && isStickyFooterBeingPushedOffscreen(recyclerView, footer)) {
-            View lastViewObscuredByFooter = getLastViewObscuredByFooter(recyclerView, footer);
-            translateFooterWithLastViewObscureByHeader(recyclerView, mOrientationProvider.getOrientation(recyclerView), bounds,
-                    footer, lastViewObscuredByFooter);
+    /**
+     * Collects the child at a layout position, unless it was already visited.
+     *
+     * @return the last visited position
+     */
+    private int collectChildAt(RecyclerView parent, LinearLayoutManager layoutManager, int position,
+                               long sectionId, int lastVisited) {
+        if (position <= lastVisited) {
+            return lastVisited;
         }
+        View child = layoutManager.findViewByPosition(position);
+        if (child != null) {
+            int adapterPosition = parent.getChildAdapterPosition(child);
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mChildren[mChildCount] = child;
+                mChildPositions[mChildCount] = adapterPosition;
+                // the layout position only differs from the adapter one while updates are pending
+                mChildHeaderIds[mChildCount] = adapterPosition == position ? sectionId
+                        : indexOutOfBounds(adapterPosition) ? -1 : getHeaderId(adapterPosition);
+                mChildCount++;
+            }
+        }
+        return position;
     }
 
-    private void initDefaultHeaderOffset(Rect headerMargins, RecyclerView recyclerView, View header, View firstView, int orientation) {
+    private void swapChildren(int i, int j) {
+        View child = mChildren[i];
+        mChildren[i] = mChildren[j];
+        mChildren[j] = child;
+        int position = mChildPositions[i];
+        mChildPositions[i] = mChildPositions[j];
+        mChildPositions[j] = position;
+        long headerId = mChildHeaderIds[i];
+        mChildHeaderIds[i] = mChildHeaderIds[j];
+        mChildHeaderIds[j] = headerId;
+    }
+
+    private void ensureChildCapacity(int capacity) {
+        if (mChildren.length < capacity) {
+            mChildren = new View[capacity];
+            mChildPositions = new int[capacity];
+            mChildHeaderIds = new long[capacity];
+            mChildBounds = new int[capacity * 4];
+        }
+    }
+
+    private void collectChildren(LayoutSnapshot layout) {
+        RecyclerView parent = layout.getRecyclerView();
+        int childCount = layout.getChildCount();
+        ensureChildCapacity(childCount);
+        for (int i = 0; i < childCount; i++) {
+            View child = parent.getChildAt(layout.isReverseLayout() ? childCount - 1 - i : i);
+            int position = parent.getChildAdapterPosition(child);
+            mChildren[i] = child;
+            mChildPositions[i] = position;
+            mChildHeaderIds[i] = indexOutOfBounds(position) ? -1 : getHeaderId(position);
+        }
+        mChildCount = childCount;
+    }
+
+    private void pushStickyHeader(LayoutSnapshot layout, Rect bounds, View header, long headerId) {
+        int index = findLastChildObscuredByHeader(layout, header, headerId);
+        if (index >= 0 && isStickyHeaderBeingPushedOffscreen(layout, header, mChildren[index], mChildPositions[index])) {
+            translateHeaderWithLastViewObscureByHeader(layout, bounds, header, mChildren[index]);
+        }
+    }
+
+    private void pushStickyFooter(LayoutSnapshot layout, Rect bounds, View footer, long footerId) {
+        int index = findFirstChildObscuredByFooter(layout, footer, footerId);
+        if (index >= 0 && isStickyFooterBeingPushedOffscreen(layout, footer, mChildren[index], mChildPositions[index])) {
+            translateFooterWithLastViewObscureByHeader(layout, bounds, footer, mChildren[index]);
+        }
+    }
+
+    private void initDefaultHeaderOffset(Rect headerMargins, LayoutSnapshot layout, View header, View firstView) {
         int translationX, translationY;
         mDimensionCalculator.initMargins(mTempRect1, header);
 
@@ -163,23 +503,23 @@ public class HeaderPositionCalculator {
             topMargin = marginLayoutParams.topMargin;
         }
 
-        if (orientation == LinearLayoutManager.VERTICAL) {
+        if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
             translationX = firstView.getLeft() - leftMargin + mTempRect1.left;
             translationY = Math.max(
                     firstView.getTop() - topMargin - header.getHeight() - mTempRect1.bottom,
-                    getListTop(recyclerView) + mTempRect1.top);
+                    layout.getListTop() + mTempRect1.top);
         } else {
             translationY = firstView.getTop() - topMargin + mTempRect1.top;
             translationX = Math.max(
                     firstView.getLeft() - leftMargin - header.getWidth() - mTempRect1.right,
-                    getListLeft(recyclerView) + mTempRect1.left);
+                    layout.getListLeft() + mTempRect1.left);
         }
 
         headerMargins.set(translationX, translationY, translationX + header.getWidth(),
                 translationY + header.getHeight());
     }
 
-    private void initDefaultFooterOffset(Rect footerMargins, RecyclerView recyclerView, View footer, View firstView, int orientation) {
+    private void initDefaultFooterOffset(Rect footerMargins, LayoutSnapshot layout, View footer, View firstView) {
         int translationX = -1, translationY = -1;
         mDimensionCalculator.initMargins(mTempRect1, footer);
         ViewGroup.LayoutParams layoutParams = firstView.getLayoutParams();
@@ -191,11 +531,11 @@ public class HeaderPositionCalculator {
             bottomMargin = marginLayoutParams.bottomMargin;
         }
 
-        if (orientation == LinearLayoutManager.VERTICAL) {
+        if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
             translationX = firstView.getLeft() - leftMargin + mTempRect1.left;
             translationY = Math.min(
                     firstView.getBottom() + bottomMargin + mTempRect1.top + footer.getHeight(),
-                    getListBottom(recyclerView) - mTempRect1.bottom);
+                    layout.getListBottom() - mTempRect1.bottom);
         } else {
 //      translationY = firstView.getTop() - topMargin + mTempRect1.top;
 //      translationX = Math.max(
@@ -237,20 +577,15 @@ public class HeaderPositionCalculator {
 //
 //    return false;
 //  }
-    private boolean isStickyHeaderBeingPushedOffscreen(RecyclerView recyclerView, View stickyHeader) {
-        View viewAfterHeader = getLastViewObscuredByHeader(recyclerView, stickyHeader);
-        int lastViewUnderHeaderPosition = recyclerView.getChildAdapterPosition(viewAfterHeader);
-        if (lastViewUnderHeaderPosition == RecyclerView.NO_POSITION) {
-            return false;
-        }
-        boolean isReverseLayout = mOrientationProvider.isReverseLayout(recyclerView);
-        boolean hasNewFooter = hasNewFooter(lastViewUnderHeaderPosition, isReverseLayout);
+    private boolean isStickyHeaderBeingPushedOffscreen(LayoutSnapshot layout, View stickyHeader,
+                                                       View viewAfterHeader, int lastViewUnderHeaderPosition) {
+        RecyclerView recyclerView = layout.getRecyclerView();
+        boolean hasNewFooter = hasNewFooter(lastViewUnderHeaderPosition, layout.isReverseLayout());
         if (lastViewUnderHeaderPosition > 0 && hasNewFooter) {
-            View nextFooter = mFooterProvider.getFooter(recyclerView, lastViewUnderHeaderPosition);
-            mDimensionCalculator.initMargins(mTempRect1, nextFooter);
+            getFooterExtent(layout, lastViewUnderHeaderPosition, mTempRect1);
             mDimensionCalculator.initMargins(mTempRect2, stickyHeader);
 
-            if (mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL) {
+            if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
                 int topOfNextFooter = viewAfterHeader.getBottom() + mTempRect1.top;
                 int bottomOfThisHeader = recyclerView.getPaddingTop() + stickyHeader.getBottom() + mTempRect2.top + mTempRect2.bottom;
                 if (topOfNextFooter < bottomOfThisHeader) {
@@ -268,17 +603,11 @@ public class HeaderPositionCalculator {
         return false;
     }
 
-    private boolean isStickyFooterBeingPushedOffscreen(RecyclerView recyclerView, View stickyFooter) {
-        View lastViewObscuredByFooter = getLastViewObscuredByFooter(recyclerView, stickyFooter);
-        int lastViewObscuredByFooterPostion = recyclerView.getChildAdapterPosition(lastViewObscuredByFooter);
-        if (lastViewObscuredByFooterPostion == RecyclerView.NO_POSITION) {
-            return false;
-        }
-        boolean isReverseLayout = mOrientationProvider.isReverseLayout(recyclerView);
-        boolean hasNewHeader = hasNewHeader(lastViewObscuredByFooterPostion, isReverseLayout);
+    private boolean isStickyFooterBeingPushedOffscreen(LayoutSnapshot layout, View stickyFooter,
+                                                       View lastViewObscuredByFooter, int lastViewObscuredByFooterPostion) {
+        boolean hasNewHeader = hasNewHeader(lastViewObscuredByFooterPostion, layout.isReverseLayout());
         if (lastViewObscuredByFooterPostion > 0 && hasNewHeader) {
-            View nextHeader = mHeaderProvider.getHeader(recyclerView, lastViewObscuredByFooterPostion);
-            mDimensionCalculator.initMargins(mTempRect1, nextHeader);
+            getHeaderExtent(layout, lastViewObscuredByFooterPostion, mTempRect1);
             mDimensionCalculator.initMargins(mTempRect2, stickyFooter);
             ViewGroup.LayoutParams layoutParams = lastViewObscuredByFooter.getLayoutParams();
             int leftMargin = 0;
@@ -288,10 +617,10 @@ public class HeaderPositionCalculator {
                 leftMargin = marginLayoutParams.leftMargin;
                 topMargin = marginLayoutParams.topMargin;
             }
-            if (mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL) {
+            if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
                 int bottomOfNextHeader = lastViewObscuredByFooter.getTop() - topMargin;
                 int footerHeight = stickyFooter.getHeight();
-                int topOfThisFooter = getListBottom(recyclerView) - footerHeight - mTempRect2.bottom - mTempRect2.top;
+                int topOfThisFooter = layout.getListBottom() - footerHeight - mTempRect2.bottom - mTempRect2.top;
                 if (topOfThisFooter < bottomOfNextHeader) {
                     return true;
 //        }
@@ -309,18 +638,18 @@ public class HeaderPositionCalculator {
         return false;
     }
 
-    private void translateHeaderWithNextHeader(RecyclerView recyclerView, int orientation, Rect translation,
+    private void translateHeaderWithNextHeader(LayoutSnapshot layout, Rect translation,
                                                View currentHeader, View viewAfterNextHeader, View nextHeader) {
         mDimensionCalculator.initMargins(mTempRect1, nextHeader);
         mDimensionCalculator.initMargins(mTempRect2, currentHeader);
-        if (orientation == LinearLayoutManager.VERTICAL) {
-            int topOfStickyHeader = getListTop(recyclerView) + mTempRect2.top + mTempRect2.bottom;
+        if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
+            int topOfStickyHeader = layout.getListTop() + mTempRect2.top + mTempRect2.bottom;
             int shiftFromNextHeader = viewAfterNextHeader.getTop() - nextHeader.getHeight() - mTempRect1.bottom - mTempRect1.top - currentHeader.getHeight() - topOfStickyHeader;
             if (shiftFromNextHeader < topOfStickyHeader) {
                 translation.top += shiftFromNextHeader;
             }
         } else {
-            int leftOfStickyHeader = getListLeft(recyclerView) + mTempRect2.left + mTempRect2.right;
+            int leftOfStickyHeader = layout.getListLeft() + mTempRect2.left + mTempRect2.right;
             int shiftFromNextHeader = viewAfterNextHeader.getLeft() - nextHeader.getWidth() - mTempRect1.right - mTempRect1.left - currentHeader.getWidth() - leftOfStickyHeader;
             if (shiftFromNextHeader < leftOfStickyHeader) {
                 translation.left += shiftFromNextHeader;
@@ -328,19 +657,19 @@ public class HeaderPositionCalculator {
         }
     }
 
-    private void translateHeaderWithLastViewObscureByHeader(RecyclerView recyclerView, int orientation, Rect translation, View currentHeader, View lastViewUnderHeader) {
+    private void translateHeaderWithLastViewObscureByHeader(LayoutSnapshot layout, Rect translation, View currentHeader, View lastViewUnderHeader) {
         mDimensionCalculator.initMargins(mTempRect2, currentHeader);
-        if (orientation == LinearLayoutManager.VERTICAL) {
-            int shiftFromlastViewUnderHeader = lastViewUnderHeader.getBottom() + mTempRect2.bottom - currentHeader.getHeight() - getListTop(recyclerView) - mTempRect2.top - mTempRect2.bottom;
+        if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
+            int shiftFromlastViewUnderHeader = lastViewUnderHeader.getBottom() + mTempRect2.bottom - currentHeader.getHeight() - layout.getListTop() - mTempRect2.top - mTempRect2.bottom;
             translation.top += shiftFromlastViewUnderHeader;
         } else {
 
         }
     }
 
-    private void translateFooterWithLastViewObscureByHeader(RecyclerView recyclerView, int orientation, Rect translation, View currentFooter, View lastViewUnderFooter) {
+    private void translateFooterWithLastViewObscureByHeader(LayoutSnapshot layout, Rect translation, View currentFooter, View lastViewUnderFooter) {
         mDimensionCalculator.initMargins(mTempRect2, currentFooter);
-        if (orientation == LinearLayoutManager.VERTICAL) {
+        if (layout.getOrientation() == LinearLayoutManager.VERTICAL) {
             ViewGroup.LayoutParams layoutParams = lastViewUnderFooter.getLayoutParams();
             int leftMargin = 0;
             int topMargin = 0;
@@ -350,7 +679,7 @@ public class HeaderPositionCalculator {
                 topMargin = marginLayoutParams.bottomMargin;
             }
 //      int shiftFromlastViewUnderFooter = lastViewUnderFooter.getBottom()+mTempRect2.bottom-(getListBottom(recyclerView)- currentFooter.getHeight()-mTempRect2.bottom-mTempRect2.top);
-            int shiftFormlastViewUnderFooter = lastViewUnderFooter.getTop() - topMargin - (getListBottom(recyclerView) - currentFooter.getHeight() - mTempRect2.bottom - mTempRect2.top);
+            int shiftFormlastViewUnderFooter = lastViewUnderFooter.getTop() - topMargin - (layout.getListBottom() - currentFooter.getHeight() - mTempRect2.bottom - mTempRect2.top);
             if (shiftFormlastViewUnderFooter > 0) {
                 translation.top += shiftFormlastViewUnderFooter;
             }
@@ -362,145 +691,65 @@ public class HeaderPositionCalculator {
 
 
     /**
-     * Returns the first item currently in the RecyclerView that is not obscured by a header.
+     * Scans the collected children from the start of the list for the last one that is obscured by the
+     * sticky header.
      *
-     * @param parent Recyclerview containing all the list items
-     * @return first item that is fully beneath a header
+     * @param layout   of the {@link RecyclerView}
+     * @param header   the sticky header
+     * @param headerId id of the sticky header
+     * @return index of the child in layout order, or -1 if there is none
      */
-    private View getFirstViewUnobscuredByHeader(RecyclerView parent, View firstHeader) {
-        boolean isReverseLayout = mOrientationProvider.isReverseLayout(parent);
-        int step = isReverseLayout ? -1 : 1;
-        int from = isReverseLayout ? parent.getChildCount() - 1 : 0;
-        for (int i = from; i >= 0 && i <= parent.getChildCount() - 1; i += step) {
-            View child = parent.getChildAt(i);
-            if (!itemIsObscuredByHeader(parent, child, firstHeader, mOrientationProvider.getOrientation(parent))) {
-                return child;
-            }
-        }
-        return null;
-    }
-
-    private View getLastViewObscuredByHeader(RecyclerView parent, View firstHeader) {
-        boolean isReverseLayout = mOrientationProvider.isReverseLayout(parent);
-        int step = isReverseLayout ? -1 : 1;
-        int from = isReverseLayout ? parent.getChildCount() - 1 : 0;
-        for (int i = from; i >= 0 && i <= parent.getChildCount() - 1; i += step) {
-            View child = parent.getChildAt(i);
-            if (!itemIsObscuredByHeader(parent, child, firstHeader, mOrientationProvider.getOrientation(parent))) {
-                int lastViewObscuredByHeaderPosition = i - 1;
-                if (lastViewObscuredByHeaderPosition >= 0) {
-                    return parent.getChildAt(lastViewObscuredByHeaderPosition);
-                } else {
-                    return null;
-                }
+    private int findLastChildObscuredByHeader(LayoutSnapshot layout, View header, long headerId) {
+        mDimensionCalculator.initMargins(mTempRect1, header);
+        boolean vertical = layout.getOrientation() == LinearLayoutManager.VERTICAL;
+        int headerEnd = vertical
+                ? layout.getListTop() + header.getBottom() + mTempRect1.bottom + mTempRect1.top
+                : layout.getListLeft() + header.getRight() + mTempRect1.right + mTempRect1.left;
+        for (int i = 0; i < mChildCount; i++) {
+            if (mChildHeaderIds[i] != headerId) {
+                // Resolves https://github.com/timehop/sticky-headers-recyclerview/issues/36
+                // Handles an edge case where a trailing header is smaller than the current sticky header.
+                return i - 1;
             }
-        }
-        return null;
-
-    }
-
-    private View getLastViewObscuredByFooter(RecyclerView parent, View firstFooter) {
-        boolean isReverseLayout = mOrientationProvider.isReverseLayout(parent);
-        int step = isReverseLayout ? -1 : +1;
-        int from = isReverseLayout ? parent.getChildCount() - 1 : 0;
-        for (int i = from; i >= 0 && i <= parent.getChildCount() - 1; i += step) {
-            View child = parent.getChildAt(i);
-            if (itemIsObscuredByFooter(parent, child, firstFooter, mOrientationProvider.getOrientation(parent))) {
-                return child;
+            View child = mChildren[i];
+            RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) child.getLayoutParams();
+            int childStart = vertical
+                    ? child.getTop() - layoutParams.topMargin
+                    : child.getLeft() - layoutParams.leftMargin;
+            if (childStart >= headerEnd) {
+                return i - 1;
             }
         }
-        return null;
-
+        return -1;
     }
 
     /**
-     * Determines if an item is obscured by a header
+     * Scans the collected children from the start of the list for the first one that reaches under
+     * the sticky footer.
      *
-     * @param parent
-     * @param item        to determine if obscured by header
-     * @param header      that might be obscuring the item
-     * @param orientation of the {@link RecyclerView}
-     * @return true if the item view is obscured by the header view
+     * @param layout   of the {@link RecyclerView}
+     * @param footer   the sticky footer
+     * @param footerId id of the sticky footer
+     * @return index of the child in layout order, or -1 if there is none
      */
-    private boolean itemIsObscuredByHeader(RecyclerView parent, View item, View header, int orientation) {
-        RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) item.getLayoutParams();
-        mDimensionCalculator.initMargins(mTempRect1, header);
-
-        int adapterPosition = parent.getChildAdapterPosition(item);
-        if (adapterPosition == RecyclerView.NO_POSITION || mHeaderProvider.getHeader(parent, adapterPosition) != header) {
-            // Resolves https://github.com/timehop/sticky-headers-recyclerview/issues/36
-            // Handles an edge case where a trailing header is smaller than the current sticky header.
-            return false;
+    private int findFirstChildObscuredByFooter(LayoutSnapshot layout, View footer, long footerId) {
+        if (layout.getOrientation() != LinearLayoutManager.VERTICAL) {
+            return -1;
         }
-
-        if (orientation == LinearLayoutManager.VERTICAL) {
-            int itemTop = item.getTop() - layoutParams.topMargin;
-            int headerBottom = getListTop(parent) + header.getBottom() + mTempRect1.bottom + mTempRect1.top;
-            if (itemTop >= headerBottom) {
-                return false;
-            }
-        } else {
-            int itemLeft = item.getLeft() - layoutParams.leftMargin;
-            int headerRight = getListLeft(parent) + header.getRight() + mTempRect1.right + mTempRect1.left;
-            if (itemLeft >= headerRight) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private boolean itemIsObscuredByFooter(RecyclerView parent, View item, View footer, int orientation) {
-        RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) item.getLayoutParams();
         mDimensionCalculator.initMargins(mTempRect1, footer);
-
-        int adapterPosition = parent.getChildAdapterPosition(item);
-        if (adapterPosition == RecyclerView.NO_POSITION || mFooterProvider.getFooter(parent, adapterPosition) != footer) {
-            // Resolves https://github.com/timehop/sticky-headers-recyclerview/issues/36
-            // Handles an edge case where a trailing header is smaller than the current sticky header.
-            if (parent.getChildAdapterPosition(item) == 583) {
+        int footerTop = layout.getListBottom() - footer.getHeight() - mTempRect1.bottom - mTempRect1.top;
+        for (int i = 0; i < mChildCount; i++) {
+            int position = mChildPositions[i];
+            if (position == RecyclerView.NO_POSITION) {
+                continue;
             }
-            return false;
-        }
-
-        if (orientation == LinearLayoutManager.VERTICAL) {
-            int itemBottom = item.getBottom() + layoutParams.bottomMargin;
-            int footerTop = getListBottom(parent) - footer.getHeight() - mTempRect1.bottom - mTempRect1.top;
-            if (itemBottom >= footerTop) {
-                return true;
+            View child = mChildren[i];
+            RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) child.getLayoutParams();
+            // the footer id is only asked for the children reaching under the footer
+            if (child.getBottom() + layoutParams.bottomMargin >= footerTop && mAdapter.getFooterId(position) == footerId) {
+                return i;
             }
-        } else {
-//      int itemLeft = item.getLeft() - layoutParams.leftMargin;
-//      int headerRight = getListLeft(parent) + header.getRight() + mTempRect1.right + mTempRect1.left;
-//      if (itemLeft >= headerRight) {
-//        return false;
-//      }
-        }
-
-        return false;
-    }
-
-    private int getListTop(RecyclerView view) {
-        if (view.getLayoutManager().getClipToPadding()) {
-            return view.getPaddingTop();
-        } else {
-            return 0;
-        }
-    }
-
-    private int getListBottom(RecyclerView view) {
-        if (view.getLayoutManager().getClipToPadding()) {
-            return view.getHeight() - view.getPaddingBottom();
-        } else {
-            return view.getHeight();
-        }
-    }
-
-    private int getListLeft(RecyclerView view) {
-        if (view.getLayoutManager().getClipToPadding()) {
-            return view.getPaddingLeft();
-        } else {
-            return 0;
         }
+        return -1;
     }
 }
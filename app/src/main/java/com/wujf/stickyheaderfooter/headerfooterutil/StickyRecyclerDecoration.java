@@ -1,34 +1,49 @@
 package com.wujf.stickyheaderfooter.headerfooterutil;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.Build;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
-import android.util.SparseArray;
+import android.view.Display;
 import android.view.View;
 
+import com.wujf.stickyheaderfooter.headerfooterutil.caching.ClickTargets;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.FooterProvider;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.FooterViewCache;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.HeaderProvider;
 import com.wujf.stickyheaderfooter.headerfooterutil.caching.HeaderViewCache;
+import com.wujf.stickyheaderfooter.headerfooterutil.caching.HeaderViewPool;
 import com.wujf.stickyheaderfooter.headerfooterutil.calculation.DimensionCalculator;
+import com.wujf.stickyheaderfooter.headerfooterutil.calculation.SectionIndex;
+import com.wujf.stickyheaderfooter.headerfooterutil.calculation.SectionIndexBuilder;
 import com.wujf.stickyheaderfooter.headerfooterutil.rendering.HeaderRenderer;
+import com.wujf.stickyheaderfooter.headerfooterutil.util.LayoutSnapshot;
 import com.wujf.stickyheaderfooter.headerfooterutil.util.LinearLayoutOrientationProvider;
 import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
 
     private final StickyRecyclerAdapter mAdapter;
     private final ItemVisibilityAdapter mVisibilityAdapter;
-    private final SparseArray<Rect> mHeaderRects = new SparseArray<>();
-    private final SparseArray<Rect> mFooterRects = new SparseArray<>();
+    private final DrawnRects mHeaderRects = new DrawnRects();
+    private final DrawnRects mFooterRects = new DrawnRects();
     private final HeaderProvider mHeaderProvider;
     private final FooterProvider mFooterProvider;
     private final OrientationProvider mOrientationProvider;
     private final HeaderPositionCalculator mHeaderPositionCalculator;
     private final HeaderRenderer mRenderer;
     private final DimensionCalculator mDimensionCalculator;
+    private final SectionDataObserver mSectionDataObserver = new SectionDataObserver();
+    private boolean mObservingAdapter;
 
     /**
      * The following field is used as a buffer for internal calculations. Its sole purpose is to avoid
@@ -36,26 +51,79 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
      */
     private final Rect mTempRect = new Rect();
 
+    /**
+     * Layout of the list, captured once at the start of every offsets computation and every draw, and
+     * handed to the calculator and the renderer instead of asking the orientation provider per child.
+     * {@link #mLayout} is the one the current headers and footers were placed for, a draw captures
+     * into {@link #mNextLayout} and swaps them when it places them again.
+     */
+    private final LayoutSnapshot mOffsetsLayout = new LayoutSnapshot();
+    private LayoutSnapshot mLayout = new LayoutSnapshot();
+    private LayoutSnapshot mNextLayout = new LayoutSnapshot();
+
+    /**
+     * Incremented whenever the adapter or the cached headers and footers change, so that a draw with
+     * an unchanged layout only reuses the placement made for the same generation.
+     */
+    private int mGeneration;
+    private int mPlacedGeneration = -1;
+
+    /**
+     * The list this decoration last drew on, used to redraw it from {@link #notifyHeaderChanged}.
+     */
+    private RecyclerView mRecyclerView;
+
+    private Context mTrimMemoryContext;
+    private ComponentCallbacks2 mTrimMemoryCallbacks;
+
+    private final HeaderPrefetcher mHeaderPrefetcher = new HeaderPrefetcher();
+    private boolean mHeaderPrefetchEnabled;
+
+    /**
+     * First adapter position drawn in the previous frame, used to tell the scroll direction.
+     */
+    private int mLastFirstPosition = RecyclerView.NO_POSITION;
+
     // TODO: Consider passing in orientation to simplify orientation accounting within calculation
     public StickyRecyclerDecoration(StickyRecyclerAdapter adapter) {
-        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), null);
+        this(adapter, null, new HeaderViewPool(), new HeaderViewPool());
     }
 
     public StickyRecyclerDecoration(StickyRecyclerAdapter adapter, ItemVisibilityAdapter visibilityAdapter) {
-        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), visibilityAdapter);
+        this(adapter, visibilityAdapter, new HeaderViewPool(), new HeaderViewPool());
+    }
+
+    /**
+     * Creates a decoration that takes its header and footer holders from the given pools and returns
+     * them there, like {@link RecyclerView#setRecycledViewPool}. Decorations of lists showing the same
+     * kind of sections, for instance in several tabs, can share pools so that a list rebinds the
+     * headers another one released instead of inflating its own, see {@link #recycleHeaders()}.
+     * Pools must only be shared between lists of the same activity.
+     *
+     * @param adapter           the adapter of the list
+     * @param visibilityAdapter optional, may be null
+     * @param headerPool        pool of header holders
+     * @param footerPool        pool of footer holders, distinct from the header pool
+     */
+    public StickyRecyclerDecoration(StickyRecyclerAdapter adapter, ItemVisibilityAdapter visibilityAdapter,
+                                    HeaderViewPool headerPool, HeaderViewPool footerPool) {
+        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), visibilityAdapter,
+                headerPool, footerPool);
     }
 
     private StickyRecyclerDecoration(StickyRecyclerAdapter adapter, OrientationProvider orientationProvider,
-                                     DimensionCalculator dimensionCalculator, ItemVisibilityAdapter visibilityAdapter) {
+                                     DimensionCalculator dimensionCalculator, ItemVisibilityAdapter visibilityAdapter,
+                                     HeaderViewPool headerPool, HeaderViewPool footerPool) {
         this(adapter, orientationProvider, dimensionCalculator, new HeaderRenderer(orientationProvider),
-                new HeaderViewCache(adapter, orientationProvider), new FooterViewCache(adapter, orientationProvider), visibilityAdapter);
+                new HeaderViewCache(adapter, orientationProvider, headerPool),
+                new FooterViewCache(adapter, orientationProvider, footerPool), visibilityAdapter);
     }
 
     private StickyRecyclerDecoration(StickyRecyclerAdapter adapter, OrientationProvider orientationProvider,
                                      DimensionCalculator dimensionCalculator, HeaderRenderer headerRenderer, HeaderProvider headerProvider, FooterProvider footerProvider, ItemVisibilityAdapter visibilityAdapter) {
         this(adapter, headerRenderer, orientationProvider, dimensionCalculator, headerProvider, footerProvider,
-                new HeaderPositionCalculator(adapter, headerProvider, footerProvider, orientationProvider,
-                        dimensionCalculator), visibilityAdapter);
+                new HeaderPositionCalculator(adapter, headerProvider, footerProvider, dimensionCalculator),
+                visibilityAdapter);
     }
 
     private StickyRecyclerDecoration(StickyRecyclerAdapter adapter, HeaderRenderer headerRenderer,
@@ -69,6 +137,25 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
         mDimensionCalculator = dimensionCalculator;
         mHeaderPositionCalculator = headerPositionCalculator;
         mVisibilityAdapter = visibilityAdapter;
+        if (adapter instanceof RecyclerView.Adapter) {
+            ((RecyclerView.Adapter) adapter).registerAdapterDataObserver(mSectionDataObserver);
+            mObservingAdapter = true;
+        }
+    }
+
+    /**
+     * Detaches the decoration from its adapter, which otherwise keeps it alive through the observer
+     * that follows its changes, and unregisters everything else it registered. Call it once the
+     * decoration is removed from its list or the list is destroyed; it must not be used afterwards.
+     */
+    public void release() {
+        if (mObservingAdapter) {
+            ((RecyclerView.Adapter) mAdapter).unregisterAdapterDataObserver(mSectionDataObserver);
+            mObservingAdapter = false;
+        }
+        unregisterMemoryTrimming();
+        mHeaderPrefetcher.detach();
+        mRecyclerView = null;
     }
 
     @Override
@@ -78,13 +165,16 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
         if (itemPosition == RecyclerView.NO_POSITION) {
             return;
         }
-        if (mHeaderPositionCalculator.hasNewHeader(itemPosition, mOrientationProvider.isReverseLayout(parent))) {
-            View header = getHeaderView(parent, itemPosition);
-            setItemOffsetsForHeader(outRect, header, mOrientationProvider.getOrientation(parent));
+        // offsets are asked child by child, without a hook at the start of the layout pass: only read
+        // what they depend on, the two provider calls every offset needs anyway
+        mOffsetsLayout.captureOrientation(parent, mOrientationProvider);
+        if (mHeaderPositionCalculator.hasNewHeader(itemPosition, mOffsetsLayout.isReverseLayout())) {
+            int extent = mHeaderPositionCalculator.getHeaderExtent(mOffsetsLayout, itemPosition, mTempRect);
+            setItemOffsetsForHeader(outRect, extent, mTempRect, mOffsetsLayout.getOrientation());
         }
-        if (mHeaderPositionCalculator.hasNewFooter(itemPosition, mOrientationProvider.isReverseLayout(parent))) {
-            View footer = getFooterView(parent, itemPosition);
-            setItemOffsetsForFooter(outRect, footer, mOrientationProvider.getOrientation(parent));
+        if (mHeaderPositionCalculator.hasNewFooter(itemPosition, mOffsetsLayout.isReverseLayout())) {
+            int extent = mHeaderPositionCalculator.getFooterExtent(mOffsetsLayout, itemPosition, mTempRect);
+            setItemOffsetsForFooter(outRect, extent, mTempRect, mOffsetsLayout.getOrientation());
         }
     }
 
@@ -92,24 +182,23 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
      * Sets the offsets for the first item in a section to make room for the header view
      *
      * @param itemOffsets rectangle to define offsets for the item
-     * @param header      view used to calculate offset for the item
+     * @param extent      size of the header along the scroll direction
+     * @param margins     margins of the header
      * @param orientation used to calculate offset for the item
      */
-    private void setItemOffsetsForHeader(Rect itemOffsets, View header, int orientation) {
-        mDimensionCalculator.initMargins(mTempRect, header);
+    private void setItemOffsetsForHeader(Rect itemOffsets, int extent, Rect margins, int orientation) {
         if (orientation == LinearLayoutManager.VERTICAL) {
-            itemOffsets.top = itemOffsets.top + header.getHeight() + mTempRect.top + mTempRect.bottom;
+            itemOffsets.top = itemOffsets.top + extent + margins.top + margins.bottom;
         } else {
-            itemOffsets.left = itemOffsets.left + header.getWidth() + mTempRect.left + mTempRect.right;
+            itemOffsets.left = itemOffsets.left + extent + margins.left + margins.right;
         }
     }
 
-    private void setItemOffsetsForFooter(Rect itemOffsets, View header, int orientation) {
-        mDimensionCalculator.initMargins(mTempRect, header);
+    private void setItemOffsetsForFooter(Rect itemOffsets, int extent, Rect margins, int orientation) {
         if (orientation == LinearLayoutManager.VERTICAL) {
-            itemOffsets.bottom = header.getHeight() + mTempRect.top + mTempRect.bottom;
+            itemOffsets.bottom = extent + margins.top + margins.bottom;
         } else {
-            itemOffsets.left = header.getWidth() + mTempRect.left + mTempRect.right;
+            itemOffsets.left = extent + margins.left + margins.right;
         }
     }
 
@@ -117,67 +206,91 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
     public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
         super.onDrawOver(canvas, parent, state);
 
-        final int childCount = parent.getChildCount();
-        if (childCount <= 0 || mAdapter.getItemCount() <= 0) {
-            return;
+        mRecyclerView = parent;
+        mNextLayout.captureEdges(parent, mOrientationProvider);
+        if (mPlacedGeneration != mGeneration || !mNextLayout.hasSameLayout(mLayout)
+                || !mHeaderPositionCalculator.isPlacementCurrent(parent)) {
+            // scrolled, laid out again or changed: place everything again. Otherwise the draw was
+            // caused by something else, an item animating for instance, and the last placement holds
+            LayoutSnapshot layout = mLayout;
+            mLayout = mNextLayout;
+            mNextLayout = layout;
+            mPlacedGeneration = mGeneration;
+            mLayout.captureVisiblePositions();
+            mHeaderProvider.beginFrame();
+            mFooterProvider.beginFrame();
+            mHeaderRects.clear();
+            mFooterRects.clear();
+            if (mLayout.getChildCount() <= 0 || mAdapter.getItemCount() <= 0) {
+                return;
+            }
+            mHeaderPositionCalculator.placeDecorations(mLayout, mHeaderRects, mFooterRects);
         }
 
-        for (int i = 0; i < childCount; i++) {
-            View itemView = parent.getChildAt(i);
-            int position = parent.getChildAdapterPosition(itemView);
-            if (position == RecyclerView.NO_POSITION) {
-                continue;
+        // both stores are sorted by position: draw them merged, the header of a child before its
+        // footer, so that later sections cover earlier ones as when children are visited in order
+        int footer = 0;
+        for (int header = 0; header < mHeaderRects.size(); header++) {
+            int position = mHeaderRects.positionAt(header);
+            for (; footer < mFooterRects.size() && mFooterRects.positionAt(footer) < position; footer++) {
+                drawRect(canvas, mFooterRects, footer);
+            }
+            drawRect(canvas, mHeaderRects, header);
+        }
+        for (; footer < mFooterRects.size(); footer++) {
+            drawRect(canvas, mFooterRects, footer);
+        }
+        if (mHeaderPrefetchEnabled) {
+            mHeaderPrefetcher.attach(parent, state);
+            if (mLayout.getFirstPosition() != RecyclerView.NO_POSITION) {
+                prefetchHeaderAhead(parent, mLayout.getFirstPosition(), mLayout.getLastPosition());
             }
+        }
+    }
 
-            boolean hasStickyHeader = mHeaderPositionCalculator.hasStickyHeader(itemView, mOrientationProvider.getOrientation(parent), position);
-            if (hasStickyHeader || mHeaderPositionCalculator.hasNewHeader(position, mOrientationProvider.isReverseLayout(parent))) {
-                View header = mHeaderProvider.getHeader(parent, position);
-                //re-use existing Rect, if any.
-                Rect headerOffset = mHeaderRects.get(position);
-                if (headerOffset == null) {
-                    headerOffset = new Rect();
-                    mHeaderRects.put(position, headerOffset);
-                }
-                mHeaderPositionCalculator.initHeaderBounds(headerOffset, parent, header, itemView, hasStickyHeader);
-                mRenderer.drawHeader(parent, canvas, header, headerOffset);
-            }
-            boolean hasStickyFooter = mHeaderPositionCalculator.hasStickyFooter(parent, itemView, mOrientationProvider.getOrientation(parent), position);
-            if (hasStickyFooter || mHeaderPositionCalculator.hasNewFooter(position, mOrientationProvider.isReverseLayout(parent))) {
-                View footer = mFooterProvider.getFooter(parent, position);
-                Rect footerOffset = mFooterRects.get(position);
-                if (footerOffset == null) {
-                    footerOffset = new Rect();
-                    mFooterRects.put(position, footerOffset);
-                }
-                mHeaderPositionCalculator.initFooterBounds(footerOffset, parent, footer, itemView, hasStickyFooter);
-                mRenderer.drawHeader(parent, canvas, footer, footerOffset);
+    private void drawRect(Canvas canvas, DrawnRects rects, int index) {
+        mRenderer.drawHeader(mLayout, canvas, rects.viewAt(index), rects.rectAt(index), rects.idAt(index));
+    }
+
+    /**
+     * Asks the header provider to prepare the header of the section that comes next in the scroll
+     * direction: the one after the last visible section when scrolling towards the end of the adapter,
+     * the one before the first visible section otherwise.
+     */
+    private void prefetchHeaderAhead(RecyclerView parent, int firstPosition, int lastPosition) {
+        boolean towardsEnd = mLastFirstPosition == RecyclerView.NO_POSITION || firstPosition >= mLastFirstPosition;
+        mLastFirstPosition = firstPosition;
+        SectionIndex sectionIndex = mHeaderPositionCalculator.getSectionIndex();
+        if (sectionIndex == null) {
+            return;
+        }
+        int position = RecyclerView.NO_POSITION;
+        if (towardsEnd) {
+            int section = sectionIndex.getSectionForPosition(lastPosition);
+            if (section >= 0 && section + 1 < sectionIndex.getSectionCount()) {
+                position = sectionIndex.getSectionStart(section + 1);
+            }
+        } else {
+            int section = sectionIndex.getSectionForPosition(firstPosition);
+            if (section > 0) {
+                position = sectionIndex.getSectionStart(section - 1);
             }
         }
+        if (position != RecyclerView.NO_POSITION) {
+            mHeaderProvider.prefetchHeader(parent, position);
+        }
     }
 
     /**
-     * Gets the position of the header under the specified (x, y) coordinates.
+     * Gets the position of the header under the specified (x, y) coordinates. When headers overlap,
+     * the one drawn on top wins, such as a sticky header being pushed over the next one.
      *
      * @param x x-coordinate
      * @param y y-coordinate
      * @return position of header, or -1 if not found
      */
     public int findHeaderPositionUnder(int x, int y) {
-        int tempPosition = -1; // Added
-        for (int i = 0; i < mHeaderRects.size(); i++) {
-            Rect rect = mHeaderRects.get(mHeaderRects.keyAt(i));
-            if (rect.contains(x, y)) {
-                int position = mHeaderRects.keyAt(i);
-                if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
-                    tempPosition = position; // Added
-                } else {
-                    if (tempPosition != -1) {
-                        break;//my Added
-                    }
-                }
-            }
-        }
-        return tempPosition; // Added
+        return findPositionUnder(mHeaderRects, x, y);
     }
 
     /**
@@ -188,21 +301,90 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
      * @return position of header, or -1 if not found
      */
     public int findFooterPositionUnder(int x, int y) {
-        int tempPosition = -1; // Added
-        for (int i = 0; i < mFooterRects.size(); i++) {
-            Rect rect = mFooterRects.get(mFooterRects.keyAt(i));
-            if (rect.contains(x, y)) {
-                int position = mFooterRects.keyAt(i);
-                if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
-                    tempPosition = position; // Added
-                } else {
-                    if (tempPosition != -1) {
-                        break;//my Added
-                    }
-                }
+        return findPositionUnder(mFooterRects, x, y);
+    }
+
+    /**
+     * Binary searches the rects drawn in the last frame, and returns the topmost visible one under the
+     * point. The visibility adapter is only asked about the rects that contain the point.
+     */
+    private int findPositionUnder(DrawnRects rects, int x, int y) {
+        int hitCount = rects.findHits(x, y, mLayout.getOrientation() == LinearLayoutManager.VERTICAL);
+        for (int i = 0; i < hitCount; i++) {
+            int position = rects.positionAt(rects.hitAt(i));
+            if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
+                return position;
             }
         }
-        return tempPosition; // Added
+        return -1;
+    }
+
+    /**
+     * Finds the clickable view of a drawn header that is under the specified (x, y) coordinates.
+     *
+     * @param position position of the header, as returned by {@link #findHeaderPositionUnder}
+     * @param x        x-coordinate
+     * @param y        y-coordinate
+     * @return the deepest clickable view of the header under the point, or null if there is none
+     */
+    public View findHeaderClickTarget(int position, int x, int y) {
+        return findClickTarget(mHeaderRects, mHeaderProvider.getHeaderClickTargets(position), position, x, y);
+    }
+
+    /**
+     * Finds the clickable view of a drawn footer that is under the specified (x, y) coordinates.
+     *
+     * @param position position of the footer, as returned by {@link #findFooterPositionUnder}
+     * @param x        x-coordinate
+     * @param y        y-coordinate
+     * @return the deepest clickable view of the footer under the point, or null if there is none
+     */
+    public View findFooterClickTarget(int position, int x, int y) {
+        return findClickTarget(mFooterRects, mFooterProvider.getFooterClickTargets(position), position, x, y);
+    }
+
+    /**
+     * Gets where the header of a position was drawn during the last frame.
+     *
+     * @param position  position of the header
+     * @param outBounds receives the bounds of the header
+     * @return false if no header was drawn for the position
+     */
+    public boolean findHeaderBounds(int position, Rect outBounds) {
+        return findBounds(mHeaderRects, position, outBounds);
+    }
+
+    /**
+     * Gets where the footer of a position was drawn during the last frame.
+     *
+     * @param position  position of the footer
+     * @param outBounds receives the bounds of the footer
+     * @return false if no footer was drawn for the position
+     */
+    public boolean findFooterBounds(int position, Rect outBounds) {
+        return findBounds(mFooterRects, position, outBounds);
+    }
+
+    private boolean findBounds(DrawnRects rects, int position, Rect outBounds) {
+        int index = rects.indexOfPosition(position);
+        if (index < 0) {
+            return false;
+        }
+        outBounds.set(rects.rectAt(index));
+        return true;
+    }
+
+    /**
+     * Moves the point into the coordinates of the header or footer drawn for the position, which is
+     * laid out at (0, 0) and drawn translated to the origin of its rect.
+     */
+    private View findClickTarget(DrawnRects rects, ClickTargets targets, int position, int x, int y) {
+        int index = rects.indexOfPosition(position);
+        if (index < 0 || targets == null) {
+            return null;
+        }
+        Rect rect = rects.rectAt(index);
+        return targets.findTarget(x - rect.left, y - rect.top);
     }
 
     /**
@@ -229,17 +411,397 @@ public class StickyRecyclerDecoration extends RecyclerView.ItemDecoration {
         return mFooterProvider.getFooterViewHolder(position);
     }
 
+    /**
+     * Builds the section index on a background thread instead of on the first draw. Until the index
+     * is delivered, header positions are computed by asking the adapter for each position.
+     *
+     * @param builder to build the section index with, or null to build it synchronously
+     */
+    public void setSectionIndexBuilder(SectionIndexBuilder builder) {
+        mHeaderPositionCalculator.setSectionIndexBuilder(builder);
+    }
+
+    /**
+     * Prepares headers and footers ahead of scrolling, instead of in the frame that shows them:
+     * <ul>
+     * <li>the headers and footers of the positions in the layout manager's prefetch window are bound
+     * and measured right after each scroll, in the same gap between frames as the items prefetched by
+     * RecyclerView;</li>
+     * <li>the header of the next section in the scroll direction is inflated, then bound and measured
+     * while the main thread is idle.</li>
+     * </ul>
+     * A header needed before it is ready is still created synchronously.
+     *
+     * @param enabled true to prepare headers ahead of scrolling
+     */
+    public void setHeaderPrefetchEnabled(boolean enabled) {
+        mHeaderPrefetchEnabled = enabled;
+        mLastFirstPosition = RecyclerView.NO_POSITION;
+        if (!enabled) {
+            mHeaderPrefetcher.detach();
+        }
+    }
+
+    /**
+     * Inflates the headers prepared by {@link #setHeaderPrefetchEnabled(boolean)} on a background
+     * executor. The adapter's {@code onCreateHeaderViewHolder} is then called from it and must follow
+     * the contract of {@link HeaderViewCache#setInflationExecutor(Executor)}.
+     *
+     * @param executor to inflate headers on, or null to inflate them on the main thread
+     */
+    public void setHeaderInflationExecutor(Executor executor) {
+        if (mHeaderProvider instanceof HeaderViewCache) {
+            ((HeaderViewCache) mHeaderProvider).setInflationExecutor(executor);
+        }
+    }
+
+    /**
+     * Registers for {@link ComponentCallbacks2} so that cached headers and footers are released when the system is
+     * low on memory or the app goes to the background, see {@link #trimMemory(int)}. Call
+     * {@link #unregisterMemoryTrimming()} when the list is destroyed.
+     *
+     * @param context any context, only its application context is kept
+     */
+    public void registerMemoryTrimming(Context context) {
+        unregisterMemoryTrimming();
+        mTrimMemoryContext = context.getApplicationContext();
+        mTrimMemoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        };
+        mTrimMemoryContext.registerComponentCallbacks(mTrimMemoryCallbacks);
+    }
+
+    public void unregisterMemoryTrimming() {
+        if (mTrimMemoryCallbacks != null) {
+            mTrimMemoryContext.unregisterComponentCallbacks(mTrimMemoryCallbacks);
+            mTrimMemoryCallbacks = null;
+            mTrimMemoryContext = null;
+        }
+    }
+
+    /**
+     * Releases memory according to a trim level. While the list is visible, pooled and off-screen
+     * headers and footers are dropped along with the bitmap snapshots; once the UI is hidden every cached
+     * header and position rect goes. Everything is rebuilt lazily on the next draw.
+     *
+     * @param level a {@code ComponentCallbacks2.TRIM_MEMORY_*} level
+     */
+    public void trimMemory(int level) {
+        mGeneration++;
+        mHeaderProvider.trimMemory(level);
+        mFooterProvider.trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mRenderer.clearSnapshots();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mHeaderRects.clear();
+            mFooterRects.clear();
+        }
+    }
+
+    /**
+     * Draws headers and footers from bitmap snapshots that are rasterized once per bind and size,
+     * instead of drawing their view trees every frame. Worth enabling for headers that are expensive
+     * to draw; call {@link #invalidateHeaders()} when their content changes without a new id.
+     *
+     * @param enabled true to draw from snapshots
+     */
+    public void setSnapshotsEnabled(boolean enabled) {
+        mRenderer.setSnapshotsEnabled(enabled);
+    }
+
+    /**
+     * Bounds the number and the estimated memory of cached header views. Headers currently on screen
+     * are never evicted.
+     *
+     * @param maxCount maximum number of cached headers
+     * @param maxBytes maximum estimated size of the cached headers, in bytes
+     */
+    public void setHeaderCacheLimits(int maxCount, long maxBytes) {
+        mHeaderProvider.setCacheLimits(maxCount, maxBytes);
+    }
+
+    public void setFooterCacheLimits(int maxCount, long maxBytes) {
+        mFooterProvider.setCacheLimits(maxCount, maxBytes);
+    }
+
+    /**
+     * @return the estimated size of the cached header and footer views, in bytes
+     */
+    public long getCacheBytes() {
+        return mHeaderProvider.getCacheBytes() + mFooterProvider.getCacheBytes();
+    }
+
+    /**
+     * Updates a single header in place: its cached holder is bound again with the payload through
+     * {@link StickyRecyclerHeadersAdapter#onBindHeaderViewHolder(RecyclerView.ViewHolder, int, java.util.List)}
+     * and only that header is drawn again. The list is laid out again only if the header changed
+     * size. Unlike {@link #invalidateHeaders()}, nothing is inflated and other headers are untouched.
+     *
+     * @param headerId id of the changed header
+     * @param payload  passed to the adapter, may be null for a full bind
+     */
+    public void notifyHeaderChanged(long headerId, Object payload) {
+        mGeneration++;
+        RecyclerView parent = mRecyclerView;
+        int position = parent == null ? RecyclerView.NO_POSITION : findDrawnHeaderPosition(headerId);
+        if (position == RecyclerView.NO_POSITION) {
+            // not on screen: drop the cached header, it is bound from scratch when it shows up
+            mHeaderProvider.rebindHeader(parent, headerId, RecyclerView.NO_POSITION, payload);
+            return;
+        }
+        boolean resized = mHeaderProvider.rebindHeader(parent, headerId, position, payload);
+        mRenderer.invalidateSnapshot(mHeaderProvider.getHeader(parent, position));
+        if (resized) {
+            parent.invalidateItemDecorations();
+        } else {
+            parent.invalidate();
+        }
+    }
+
+    /**
+     * Draws a header or footer again after its look changed without a rebind, such as the pressed state
+     * of one of its views, dropping its snapshot if it has one.
+     *
+     * @param view header or footer view, as returned by {@link #getHeaderView} or {@link #getFooterView}
+     */
+    public void invalidateHeaderView(View view) {
+        invalidateHeaderView(view, null);
+    }
+
+    /**
+     * Like {@link #invalidateHeaderView(View)}, but only invalidates the region of the list the header
+     * or footer is drawn in, such as while one of its drawables animates.
+     *
+     * @param view   header or footer view
+     * @param bounds where the view is drawn, see {@link #findHeaderBounds}, or null for the whole list
+     */
+    public void invalidateHeaderView(View view, Rect bounds) {
+        mRenderer.invalidateSnapshot(view);
+        if (mRecyclerView == null) {
+            return;
+        }
+        if (bounds != null) {
+            mRecyclerView.invalidate(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        } else {
+            mRecyclerView.invalidate();
+        }
+    }
+
+    /**
+     * @return a position drawn with the given header during the last frame, or
+     * {@link RecyclerView#NO_POSITION}
+     */
+    private int findDrawnHeaderPosition(long headerId) {
+        for (int i = 0; i < mHeaderRects.size(); i++) {
+            int position = mHeaderRects.positionAt(i);
+            if (position < mAdapter.getItemCount() && mHeaderPositionCalculator.getHeaderId(position) == headerId) {
+                return position;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
     /**
      * Invalidates cached headers.  This does not invalidate the recyclerview, you should do that manually after
      * calling this method.
      */
     public void invalidateHeaders() {
+        mGeneration++;
         mHeaderProvider.invalidate();
+        mRenderer.invalidateSnapshots();
         mHeaderRects.clear();
+        mHeaderPositionCalculator.invalidateSectionIndex();
+    }
+
+    /**
+     * Hands every cached header and footer holder to the pools, without invalidating anything else.
+     * Call it when the list goes off screen so that lists sharing the pools can rebind them.
+     */
+    public void recycleHeaders() {
+        mGeneration++;
+        mHeaderProvider.invalidate();
+        mFooterProvider.invalidate();
+        mRenderer.clearSnapshots();
     }
 
     public void invalidateFooters() {
+        mGeneration++;
         mFooterProvider.invalidate();
+        mRenderer.invalidateSnapshots();
         mFooterRects.clear();
+        mHeaderPositionCalculator.invalidateSectionIndex();
+    }
+
+    /**
+     * Keeps the section index and the cached header and footer rects in step with the adapter, so
+     * granular changes only touch the affected sections instead of invalidating everything.
+     */
+    private class SectionDataObserver extends RecyclerView.AdapterDataObserver {
+
+        @Override
+        public void onChanged() {
+            mHeaderPrefetcher.discard();
+            invalidateHeaders();
+            invalidateFooters();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mGeneration++;
+            mHeaderPositionCalculator.onItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mGeneration++;
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeInserted(positionStart, itemCount);
+            mHeaderRects.offsetPositions(positionStart, 0, itemCount);
+            mFooterRects.offsetPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mGeneration++;
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeRemoved(positionStart, itemCount);
+            mHeaderRects.offsetPositions(positionStart, itemCount, -itemCount);
+            mFooterRects.offsetPositions(positionStart, itemCount, -itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mGeneration++;
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeMoved(fromPosition, toPosition, itemCount);
+            mHeaderRects.offsetPositions(fromPosition, itemCount, -itemCount);
+            mFooterRects.offsetPositions(fromPosition, itemCount, -itemCount);
+            mHeaderRects.offsetPositions(toPosition, 0, itemCount);
+            mFooterRects.offsetPositions(toPosition, 0, itemCount);
+        }
+    }
+
+    /**
+     * Runs the layout manager's own prefetch window computation after every scroll, and binds the
+     * headers and footers of the sections starting or ending inside that window in a runnable posted
+     * from the scroll. Like RecyclerView's GapWorker, it runs once the frame that scrolled is done and
+     * stops binding when the next frame is due, the positions left being collected again on the next
+     * scroll.
+     * <p>
+     * The layout manager reports layout positions, which only match adapter positions while no adapter
+     * update is pending, so nothing is collected or bound during one and the positions collected
+     * before a structural change are discarded.
+     */
+    private class HeaderPrefetcher extends RecyclerView.OnScrollListener
+            implements RecyclerView.LayoutManager.LayoutPrefetchRegistry, Runnable {
+
+        private static final long DEFAULT_FRAME_INTERVAL_NS = 1000000000L / 60;
+
+        private int[] mPositions = new int[4];
+        private int mCount;
+        private RecyclerView mRecyclerView;
+        private RecyclerView.State mState;
+        private boolean mPosted;
+
+        void attach(RecyclerView recyclerView, RecyclerView.State state) {
+            mState = state;
+            if (mRecyclerView != recyclerView) {
+                detach();
+                mRecyclerView = recyclerView;
+                recyclerView.addOnScrollListener(this);
+            }
+        }
+
+        void detach() {
+            if (mRecyclerView != null) {
+                mRecyclerView.removeOnScrollListener(this);
+                mRecyclerView.removeCallbacks(this);
+                mRecyclerView = null;
+            }
+            mPosted = false;
+            mCount = 0;
+        }
+
+        /**
+         * Forgets the positions collected so far, they no longer designate the same items.
+         */
+        void discard() {
+            mCount = 0;
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (layoutManager == null || !layoutManager.isItemPrefetchEnabled() || (dx == 0 && dy == 0)
+                    || recyclerView.hasPendingAdapterUpdates()) {
+                return;
+            }
+            layoutManager.collectAdjacentPrefetchPositions(dx, dy, mState, this);
+            if (mCount > 0 && !mPosted) {
+                mPosted = true;
+                recyclerView.post(this);
+            }
+        }
+
+        @Override
+        public void addPosition(int layoutPosition, int pixelDistance) {
+            if (mCount == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mCount * 2);
+            }
+            mPositions[mCount++] = layoutPosition;
+        }
+
+        @Override
+        public void run() {
+            mPosted = false;
+            if (mRecyclerView.hasPendingAdapterUpdates()) {
+                mCount = 0;
+                return;
+            }
+            long deadlineNs = getNextFrameNs();
+            int itemCount = mAdapter.getItemCount();
+            boolean reverseLayout = mOrientationProvider.isReverseLayout(mRecyclerView);
+            for (int i = 0; i < mCount && System.nanoTime() < deadlineNs; i++) {
+                int position = mPositions[i];
+                if (position < 0 || position >= itemCount) {
+                    continue;
+                }
+                if (mHeaderPositionCalculator.hasNewHeader(position, reverseLayout)) {
+                    mHeaderProvider.getHeader(mRecyclerView, position);
+                }
+                if (mHeaderPositionCalculator.hasNewFooter(position, reverseLayout)) {
+                    mFooterProvider.getFooter(mRecyclerView, position);
+                }
+            }
+            mCount = 0;
+        }
+
+        /**
+         * @return the time the next frame is due, estimated as GapWorker does from the drawing time
+         * of the last one and the refresh rate of the display
+         */
+        private long getNextFrameNs() {
+            long frameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                Display display = mRecyclerView.getDisplay();
+                if (display != null && display.getRefreshRate() >= 30) {
+                    frameIntervalNs = (long) (1000000000 / display.getRefreshRate());
+                }
+            }
+            return TimeUnit.MILLISECONDS.toNanos(mRecyclerView.getDrawingTime()) + frameIntervalNs;
+        }
     }
 }
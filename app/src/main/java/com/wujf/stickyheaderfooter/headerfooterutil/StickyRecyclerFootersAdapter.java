@@ -1,5 +1,6 @@
 package com.wujf.stickyheaderfooter.headerfooterutil;
 
+import android.graphics.Rect;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 
@@ -24,6 +25,42 @@ public interface StickyRecyclerFootersAdapter<VH extends RecyclerView.ViewHolder
      */
     VH onCreateFooterViewHolder(ViewGroup parent);
 
+    /**
+     * Returns the view type of the footer of this item. Footer view holders are only reused for footers
+     * of the same type. Defaults to a single type.
+     *
+     * @param position the adapter position
+     * @return the view type of the footer
+     */
+    default int getFooterViewType(int position) {
+        return 0;
+    }
+
+    /**
+     * Creates a new ViewHolder for a footer of the given view type. Defaults to
+     * {@link #onCreateFooterViewHolder(ViewGroup)}.
+     *
+     * @param parent   the view to create a footer view holder for
+     * @param viewType the view type returned by {@link #getFooterViewType(int)}
+     * @return the view holder
+     */
+    default VH onCreateFooterViewHolder(ViewGroup parent, int viewType) {
+        return onCreateFooterViewHolder(parent);
+    }
+
+    /**
+     * Declares that every footer has the same size along the scroll direction and the same margins.
+     * Item offsets and push-off positions are then computed from these values, without creating or
+     * measuring a footer view until it is drawn. Defaults to -1, footers are measured.
+     *
+     * @param outMargins receives the margins of the footers, left empty for no margins
+     * @return the height of the footers in a vertical list, their width in a horizontal one, or -1
+     * if footers differ in size
+     */
+    default int getFixedFooterExtent(Rect outMargins) {
+        return -1;
+    }
+
     /**
      * Binds an existing ViewHolder to the specified adapter position.
      *
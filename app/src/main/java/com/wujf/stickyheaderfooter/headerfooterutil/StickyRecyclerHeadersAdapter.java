@@ -1,8 +1,11 @@
 package com.wujf.stickyheaderfooter.headerfooterutil;
 
+import android.graphics.Rect;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 
+import java.util.List;
+
 public interface StickyRecyclerHeadersAdapter<VH extends RecyclerView.ViewHolder> {
     /**
      * Get the ID of the header associated with this item.  For example, if your headers group
@@ -14,6 +17,21 @@ public interface StickyRecyclerHeadersAdapter<VH extends RecyclerView.ViewHolder
      */
     long getHeaderId(int position);
 
+    /**
+     * Fills {@code out} with the header ids of the positions in [from, to), {@code out[0]} receiving the
+     * id of {@code from}. Used whenever a range of ids is needed; adapters that read a range more
+     * cheaply than one position at a time, like cursor backed ones, should override it.
+     *
+     * @param from first position, inclusive
+     * @param to   last position, exclusive
+     * @param out  array of at least {@code to - from} elements receiving the ids
+     */
+    default void getHeaderIds(int from, int to, long[] out) {
+        for (int position = from; position < to; position++) {
+            out[position - from] = getHeaderId(position);
+        }
+    }
+
     /**
      * Creates a new ViewHolder for a header.  This works the same way onCreateViewHolder in
      * Recycler.Adapter, ViewHolders can be reused for different views.  This is usually a good place
@@ -24,6 +42,42 @@ public interface StickyRecyclerHeadersAdapter<VH extends RecyclerView.ViewHolder
      */
     VH onCreateHeaderViewHolder(ViewGroup parent);
 
+    /**
+     * Returns the view type of the header of this item. Header view holders are only reused for headers
+     * of the same type. Defaults to a single type.
+     *
+     * @param position the adapter position
+     * @return the view type of the header
+     */
+    default int getHeaderViewType(int position) {
+        return 0;
+    }
+
+    /**
+     * Creates a new ViewHolder for a header of the given view type. Defaults to
+     * {@link #onCreateHeaderViewHolder(ViewGroup)}.
+     *
+     * @param parent   the view to create a header view holder for
+     * @param viewType the view type returned by {@link #getHeaderViewType(int)}
+     * @return the view holder
+     */
+    default VH onCreateHeaderViewHolder(ViewGroup parent, int viewType) {
+        return onCreateHeaderViewHolder(parent);
+    }
+
+    /**
+     * Declares that every header has the same size along the scroll direction and the same margins.
+     * Item offsets and push-off positions are then computed from these values, without creating or
+     * measuring a header view until it is drawn. Defaults to -1, headers are measured.
+     *
+     * @param outMargins receives the margins of the headers, left empty for no margins
+     * @return the height of the headers in a vertical list, their width in a horizontal one, or -1
+     * if headers differ in size
+     */
+    default int getFixedHeaderExtent(Rect outMargins) {
+        return -1;
+    }
+
     /**
      * Binds an existing ViewHolder to the specified adapter position.
      *
@@ -32,6 +86,20 @@ public interface StickyRecyclerHeadersAdapter<VH extends RecyclerView.ViewHolder
      */
     void onBindHeaderViewHolder(VH holder, int position);
 
+    /**
+     * Binds an existing ViewHolder again with payloads, like
+     * {@link RecyclerView.Adapter#onBindViewHolder(RecyclerView.ViewHolder, int, List)}. Called on the
+     * cached holder of a header passed to {@code notifyHeaderChanged}; an empty list asks for a full
+     * bind. Defaults to {@link #onBindHeaderViewHolder(RecyclerView.ViewHolder, int)}.
+     *
+     * @param holder   the view holder
+     * @param position the adapter position
+     * @param payloads the payloads passed to {@code notifyHeaderChanged}, possibly empty
+     */
+    default void onBindHeaderViewHolder(VH holder, int position, List<Object> payloads) {
+        onBindHeaderViewHolder(holder, position);
+    }
+
     VH getHeaderViewHolder(int position);
 
 }
@@ -19,8 +19,47 @@ public interface FooterProvider {
 
     public RecyclerView.ViewHolder getFooterViewHolder(int position);
 
+    /**
+     * @param position followed by the footer
+     * @return the clickable views of the footer cached for the position, or null if it is not cached
+     */
+    ClickTargets getFooterClickTargets(int position);
+
     /**
      * TODO: describe this functionality and its necessity
      */
     void invalidate();
+
+    /**
+     * Bounds the cache of footer views. The least recently used footers are dropped first, and
+     * footers drawn in the current or previous frame are kept even if that exceeds the bounds.
+     *
+     * @param maxCount maximum number of cached footers
+     * @param maxBytes maximum estimated size of the cached footers, in bytes
+     */
+    void setCacheLimits(int maxCount, long maxBytes);
+
+    /**
+     * @return the number of cached footers
+     */
+    int getCacheSize();
+
+    /**
+     * @return the estimated size of the cached footers, in bytes
+     */
+    long getCacheBytes();
+
+    /**
+     * Called at the start of every draw pass so that footers on screen are never evicted.
+     */
+    void beginFrame();
+
+    /**
+     * Releases memory according to a {@link android.content.ComponentCallbacks2} trim level: pooled
+     * footers first, then cached footers that are not on screen, then every cached footers once the UI is
+     * hidden. Released footers are created again when they are needed.
+     *
+     * @param level the trim level passed to {@code onTrimMemory}
+     */
+    void trimMemory(int level);
 }
@@ -1,6 +1,6 @@
 package com.wujf.stickyheaderfooter.headerfooterutil.caching;
 
-import android.support.v4.util.LongSparseArray;
+import android.content.ComponentCallbacks2;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
@@ -16,13 +16,26 @@ import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 public class FooterViewCache implements FooterProvider {
 
     private final StickyRecyclerFootersAdapter mAdapter;
-    private final LongSparseArray<RecyclerView.ViewHolder> mFooterViews = new LongSparseArray<>();
+    private final LruViewHolderCache mFooterViews;
+    private final HeaderViewPool mPool;
     private final OrientationProvider mOrientationProvider;
 
     public FooterViewCache(StickyRecyclerFootersAdapter adapter,
                            OrientationProvider orientationProvider) {
+        this(adapter, orientationProvider, new HeaderViewPool());
+    }
+
+    public FooterViewCache(StickyRecyclerFootersAdapter adapter,
+                           OrientationProvider orientationProvider, HeaderViewPool pool) {
         mAdapter = adapter;
         mOrientationProvider = orientationProvider;
+        mPool = pool;
+        mFooterViews = new LruViewHolderCache(new LruViewHolderCache.EvictionListener() {
+            @Override
+            public void onEvicted(RecyclerView.ViewHolder holder, int viewType) {
+                mPool.putRecycledView(viewType, holder);
+            }
+        });
     }
 
     @Override
@@ -30,36 +43,47 @@ public class FooterViewCache implements FooterProvider {
         long headerId = mAdapter.getFooterId(position);
         RecyclerView.ViewHolder viewHolder = getFooterViewHolder(position);
         if (viewHolder == null) {
-            //TODO - recycle views
-            viewHolder = mAdapter.onCreateFooterViewHolder(parent);
+            int viewType = mAdapter.getFooterViewType(position);
+            viewHolder = mPool.getRecycledView(viewType);
+            if (viewHolder == null) {
+                viewHolder = mAdapter.onCreateFooterViewHolder(parent, viewType);
+            }
             mAdapter.onBindFooterViewHolder(viewHolder, position);
             View footer = viewHolder.itemView;
             if (footer.getLayoutParams() == null) {
                 footer.setLayoutParams(new ViewGroup.LayoutParams(
                         ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
             }
-
-            int widthSpec;
-            int heightSpec;
-
-            if (mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL) {
-                widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-                heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
-            } else {
-                widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.UNSPECIFIED);
-                heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.EXACTLY);
-            }
-
-            int childWidth = ViewGroup.getChildMeasureSpec(widthSpec,
-                    parent.getPaddingLeft() + parent.getPaddingRight(), footer.getLayoutParams().width);
-            int childHeight = ViewGroup.getChildMeasureSpec(heightSpec,
-                    parent.getPaddingTop() + parent.getPaddingBottom(), footer.getLayoutParams().height);
+            mFooterViews.put(headerId, viewHolder, viewType);
+            footer.setTag(headerId);
+        }
+        View footer = viewHolder.itemView;
+        int childWidth = getChildWidthSpec(parent, footer);
+        int childHeight = getChildHeightSpec(parent, footer);
+        if (!mFooterViews.isMeasuredWith(headerId, childWidth, childHeight)) {
+            // newly bound, or the parent was resized, padded or reoriented since the last measure:
+            // measure again in place, without rebinding
             footer.measure(childWidth, childHeight);
             footer.layout(0, 0, footer.getMeasuredWidth(), footer.getMeasuredHeight());
-            mFooterViews.put(headerId, viewHolder);
-            footer.setTag(headerId);
+            mFooterViews.setMeasureSpecs(headerId, childWidth, childHeight);
         }
-        return viewHolder.itemView;
+        return footer;
+    }
+
+    private int getChildWidthSpec(RecyclerView parent, View footer) {
+        int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+                ? View.MeasureSpec.EXACTLY : View.MeasureSpec.UNSPECIFIED;
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), mode);
+        return ViewGroup.getChildMeasureSpec(widthSpec,
+                parent.getPaddingLeft() + parent.getPaddingRight(), footer.getLayoutParams().width);
+    }
+
+    private int getChildHeightSpec(RecyclerView parent, View footer) {
+        int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+                ? View.MeasureSpec.UNSPECIFIED : View.MeasureSpec.EXACTLY;
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), mode);
+        return ViewGroup.getChildMeasureSpec(heightSpec,
+                parent.getPaddingTop() + parent.getPaddingBottom(), footer.getLayoutParams().height);
     }
 
     public RecyclerView.ViewHolder getFooterViewHolder(int position) {
@@ -67,8 +91,46 @@ public class FooterViewCache implements FooterProvider {
         return mFooterViews.get(footerId);
     }
 
+    @Override
+    public ClickTargets getFooterClickTargets(int position) {
+        return mFooterViews.getClickTargets(mAdapter.getFooterId(position));
+    }
+
     @Override
     public void invalidate() {
         mFooterViews.clear();
     }
+
+    @Override
+    public void setCacheLimits(int maxCount, long maxBytes) {
+        mFooterViews.setLimits(maxCount, maxBytes);
+    }
+
+    @Override
+    public int getCacheSize() {
+        return mFooterViews.size();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return mFooterViews.getEstimatedBytes();
+    }
+
+    @Override
+    public void beginFrame() {
+        mFooterViews.beginFrame();
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mFooterViews.clear();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mFooterViews.trimToVisible();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mPool.clear();
+        }
+    }
 }
@@ -1,14 +1,22 @@
 package com.wujf.stickyheaderfooter.headerfooterutil.caching;
 
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.v4.util.LongSparseArray;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.wujf.stickyheaderfooter.headerfooterutil.StickyRecyclerHeadersAdapter;
 import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * An implementation of {@link HeaderProvider} that creates and caches header views
@@ -16,13 +24,38 @@ import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 public class HeaderViewCache implements HeaderProvider {
 
     private final StickyRecyclerHeadersAdapter mAdapter;
-    private final LongSparseArray<RecyclerView.ViewHolder> mHeaderViews = new LongSparseArray<>();
+    private final LruViewHolderCache mHeaderViews;
+    private final HeaderViewPool mPool;
     private final OrientationProvider mOrientationProvider;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Ids of the headers being prepared by {@link #prefetchHeader(RecyclerView, int)}.
+     */
+    private final LongSparseArray<Boolean> mPendingHeaderIds = new LongSparseArray<>();
+    /**
+     * Number of holders being inflated on the executor, by view type. They all land in the pool,
+     * which drops those beyond its maximum.
+     */
+    private final SparseIntArray mInflatingCounts = new SparseIntArray();
+    private Executor mInflationExecutor;
 
     public HeaderViewCache(StickyRecyclerHeadersAdapter adapter,
                            OrientationProvider orientationProvider) {
+        this(adapter, orientationProvider, new HeaderViewPool());
+    }
+
+    public HeaderViewCache(StickyRecyclerHeadersAdapter adapter,
+                           OrientationProvider orientationProvider, HeaderViewPool pool) {
         mAdapter = adapter;
         mOrientationProvider = orientationProvider;
+        mPool = pool;
+        mHeaderViews = new LruViewHolderCache(new LruViewHolderCache.EvictionListener() {
+            @Override
+            public void onEvicted(RecyclerView.ViewHolder holder, int viewType) {
+                mPool.putRecycledView(viewType, holder);
+            }
+        });
     }
 
     @Override
@@ -31,35 +64,113 @@ public class HeaderViewCache implements HeaderProvider {
 
         RecyclerView.ViewHolder viewHolder = mHeaderViews.get(headerId);
         if (viewHolder == null) {
-            //TODO - recycle views
-            viewHolder = mAdapter.onCreateHeaderViewHolder(parent);
+            int viewType = mAdapter.getHeaderViewType(position);
+            viewHolder = mPool.getRecycledView(viewType);
+            if (viewHolder == null) {
+                viewHolder = mAdapter.onCreateHeaderViewHolder(parent, viewType);
+            }
             mAdapter.onBindHeaderViewHolder(viewHolder, position);
             View header = viewHolder.itemView;
             if (header.getLayoutParams() == null) {
                 header.setLayoutParams(new ViewGroup.LayoutParams(
                         ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
             }
+            mHeaderViews.put(headerId, viewHolder, viewType);
+        }
+        View header = viewHolder.itemView;
+        int childWidth = getChildWidthSpec(parent, header);
+        int childHeight = getChildHeightSpec(parent, header);
+        if (!mHeaderViews.isMeasuredWith(headerId, childWidth, childHeight)) {
+            // newly bound, or the parent was resized, padded or reoriented since the last measure:
+            // measure again in place, without rebinding
+            header.measure(childWidth, childHeight);
+            header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+            mHeaderViews.setMeasureSpecs(headerId, childWidth, childHeight);
+        }
+        return header;
+    }
 
-            int widthSpec;
-            int heightSpec;
+    private int getChildWidthSpec(RecyclerView parent, View header) {
+        int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+                ? View.MeasureSpec.EXACTLY : View.MeasureSpec.UNSPECIFIED;
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), mode);
+        return ViewGroup.getChildMeasureSpec(widthSpec,
+                parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
+    }
 
-            if (mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL) {
-                widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-                heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
-            } else {
-                widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.UNSPECIFIED);
-                heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.EXACTLY);
-            }
+    private int getChildHeightSpec(RecyclerView parent, View header) {
+        int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+                ? View.MeasureSpec.UNSPECIFIED : View.MeasureSpec.EXACTLY;
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), mode);
+        return ViewGroup.getChildMeasureSpec(heightSpec,
+                parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+    }
 
-            int childWidth = ViewGroup.getChildMeasureSpec(widthSpec,
-                    parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
-            int childHeight = ViewGroup.getChildMeasureSpec(heightSpec,
-                    parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
-            header.measure(childWidth, childHeight);
-            header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
-            mHeaderViews.put(headerId, viewHolder);
+    /**
+     * Inflates prefetched headers on the given executor instead of the main thread.
+     * <p>
+     * The adapter's {@code onCreateHeaderViewHolder} is then called from that executor, with the live
+     * RecyclerView as parent. It must only use the parent as the root to inflate against, with
+     * {@code attachToRoot} false, so that the header gets its layout params and theme, and must neither
+     * read the parent's state nor modify it, nor touch any other view or adapter data. The holder is
+     * handed back to the main thread before it is bound.
+     *
+     * @param executor to inflate headers on, or null to inflate them on the main thread
+     */
+    public void setInflationExecutor(Executor executor) {
+        mInflationExecutor = executor;
+    }
+
+    @Override
+    public void prefetchHeader(final RecyclerView parent, final int position) {
+        final long headerId = mAdapter.getHeaderId(position);
+        if (headerId < 0 || mHeaderViews.contains(headerId) || mPendingHeaderIds.get(headerId) != null) {
+            return;
         }
-        return viewHolder.itemView;
+        mPendingHeaderIds.put(headerId, Boolean.TRUE);
+        final int viewType = mAdapter.getHeaderViewType(position);
+        int inflatingCount = mInflatingCounts.get(viewType);
+        if (mInflationExecutor == null || mPool.getRecycledViewCount(viewType) > 0
+                || inflatingCount >= mPool.getMaxRecycledViews(viewType)) {
+            // a pooled holder is available, or enough are on their way to fill the pool
+            bindWhenIdle(parent, position, headerId);
+            return;
+        }
+        mInflatingCounts.put(viewType, inflatingCount + 1);
+        mInflationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerView.ViewHolder viewHolder = mAdapter.onCreateHeaderViewHolder(parent, viewType);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mInflatingCounts.put(viewType, mInflatingCounts.get(viewType) - 1);
+                        mPool.putRecycledView(viewType, viewHolder);
+                        bindWhenIdle(parent, position, headerId);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Binds and measures the header once the main thread has nothing else to do, through the same path
+     * as {@link #getHeader(RecyclerView, int)}, which then picks the inflated holder from the pool. If
+     * the header was needed earlier, it has been created synchronously and this does nothing.
+     */
+    private void bindWhenIdle(final RecyclerView parent, final int position, final long headerId) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mPendingHeaderIds.remove(headerId);
+                RecyclerView.Adapter adapter = parent.getAdapter();
+                if (adapter != null && position < adapter.getItemCount()
+                        && mAdapter.getHeaderId(position) == headerId) {
+                    getHeader(parent, position);
+                }
+                return false;
+            }
+        });
     }
 
     @Override
@@ -68,8 +179,70 @@ public class HeaderViewCache implements HeaderProvider {
         return mHeaderViews.get(headerId);
     }
 
+    @Override
+    public ClickTargets getHeaderClickTargets(int position) {
+        return mHeaderViews.getClickTargets(mAdapter.getHeaderId(position));
+    }
+
+    @Override
+    public boolean rebindHeader(RecyclerView parent, long headerId, int position, Object payload) {
+        if (position == RecyclerView.NO_POSITION) {
+            mHeaderViews.remove(headerId);
+            return false;
+        }
+        RecyclerView.ViewHolder viewHolder = mHeaderViews.get(headerId);
+        if (viewHolder == null) {
+            return false;
+        }
+        View header = viewHolder.itemView;
+        int width = header.getMeasuredWidth();
+        int height = header.getMeasuredHeight();
+        List<Object> payloads = payload == null
+                ? Collections.emptyList() : Collections.singletonList(payload);
+        mAdapter.onBindHeaderViewHolder(viewHolder, position, payloads);
+        int childWidth = getChildWidthSpec(parent, header);
+        int childHeight = getChildHeightSpec(parent, header);
+        header.measure(childWidth, childHeight);
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+        mHeaderViews.setMeasureSpecs(headerId, childWidth, childHeight);
+        return header.getMeasuredWidth() != width || header.getMeasuredHeight() != height;
+    }
+
     @Override
     public void invalidate() {
         mHeaderViews.clear();
     }
+
+    @Override
+    public void setCacheLimits(int maxCount, long maxBytes) {
+        mHeaderViews.setLimits(maxCount, maxBytes);
+    }
+
+    @Override
+    public int getCacheSize() {
+        return mHeaderViews.size();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return mHeaderViews.getEstimatedBytes();
+    }
+
+    @Override
+    public void beginFrame() {
+        mHeaderViews.beginFrame();
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mHeaderViews.clear();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mHeaderViews.trimToVisible();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mPool.clear();
+        }
+    }
 }
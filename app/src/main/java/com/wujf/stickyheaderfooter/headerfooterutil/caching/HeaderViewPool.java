@@ -0,0 +1,88 @@
+package com.wujf.stickyheaderfooter.headerfooterutil.caching;
+
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+
+/**
+ * Holds header or footer view holders that are no longer cached for any id, grouped by view type,
+ * in the spirit of {@link RecyclerView.RecycledViewPool}. A holder taken from the pool is rebound to
+ * its new position instead of inflating a new one.
+ * <p>
+ * A pool can be shared by the decorations of several lists, which then reuse the holders released by
+ * each other. It is not thread safe and must only be used from the main thread.
+ */
+public class HeaderViewPool {
+
+    private static final int DEFAULT_MAX_RECYCLED_VIEWS = 5;
+
+    private final SparseArray<ArrayList<RecyclerView.ViewHolder>> mScrap = new SparseArray<>();
+    private final SparseIntArray mMaxRecycledViews = new SparseIntArray();
+
+    /**
+     * @param viewType view type of the holder
+     * @return a holder of the given type to rebind, or null if none is available
+     */
+    public RecyclerView.ViewHolder getRecycledView(int viewType) {
+        ArrayList<RecyclerView.ViewHolder> scrap = mScrap.get(viewType);
+        if (scrap == null || scrap.isEmpty()) {
+            return null;
+        }
+        return scrap.remove(scrap.size() - 1);
+    }
+
+    /**
+     * @param viewType view type of the holder
+     * @return the number of pooled holders of the given type
+     */
+    public int getRecycledViewCount(int viewType) {
+        ArrayList<RecyclerView.ViewHolder> scrap = mScrap.get(viewType);
+        return scrap == null ? 0 : scrap.size();
+    }
+
+    /**
+     * Adds a holder to the pool, unless the pool already holds the maximum for its type.
+     *
+     * @param viewType view type of the holder
+     * @param holder   holder that is no longer used for any id
+     */
+    public void putRecycledView(int viewType, RecyclerView.ViewHolder holder) {
+        ArrayList<RecyclerView.ViewHolder> scrap = mScrap.get(viewType);
+        if (scrap == null) {
+            scrap = new ArrayList<>();
+            mScrap.put(viewType, scrap);
+        }
+        if (scrap.size() < getMaxRecycledViews(viewType) && !scrap.contains(holder)) {
+            scrap.add(holder);
+        }
+    }
+
+    /**
+     * @param viewType view type of the holder
+     * @return the maximum number of pooled holders of the given type, more are dropped
+     */
+    public int getMaxRecycledViews(int viewType) {
+        return mMaxRecycledViews.get(viewType, DEFAULT_MAX_RECYCLED_VIEWS);
+    }
+
+    /**
+     * @param viewType view type to configure
+     * @param max      maximum number of pooled holders of that type
+     */
+    public void setMaxRecycledViews(int viewType, int max) {
+        mMaxRecycledViews.put(viewType, max);
+        ArrayList<RecyclerView.ViewHolder> scrap = mScrap.get(viewType);
+        while (scrap != null && scrap.size() > max) {
+            scrap.remove(scrap.size() - 1);
+        }
+    }
+
+    /**
+     * Drops every pooled holder.
+     */
+    public void clear() {
+        mScrap.clear();
+    }
+}
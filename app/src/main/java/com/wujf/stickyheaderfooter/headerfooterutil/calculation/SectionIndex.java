@@ -0,0 +1,317 @@
+package com.wujf.stickyheaderfooter.headerfooterutil.calculation;
+
+import com.wujf.stickyheaderfooter.headerfooterutil.StickyRecyclerHeadersAdapter;
+
+import java.util.Arrays;
+
+/**
+ * Index of the sections of an adapter. A section is a run of consecutive positions that share the
+ * same header id. The first position of every section is kept in a sorted int array, so questions
+ * about section boundaries are answered without calling back into the adapter.
+ * <p>
+ * Granular adapter changes are applied with the {@code onItemRange*} methods: they shift the stored
+ * boundaries right away and remember the range whose header ids must be read again, which happens in
+ * {@link #refresh(StickyRecyclerHeadersAdapter)} once the adapter has settled.
+ * <p>
+ * Lookups are binary searches. A change costs a binary search plus a shift of the boundaries of every
+ * section after it, and the refresh reads the header ids of the changed range only, so neither grows
+ * with the number of items. The shift is linear in the number of sections, not logarithmic: it is a
+ * tight pass over an int array, far cheaper than the header ids a rebuild would read again.
+ */
+public class SectionIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Number of header ids requested from the adapter at once.
+     */
+    private static final int ID_WINDOW = 256;
+
+    private int[] mSectionStarts;
+    private long[] mSectionIds;
+    private int mSectionCount;
+    private int mItemCount;
+
+    /**
+     * Inclusive range of positions whose section boundaries have to be read again from the adapter,
+     * or -1 if the index is up to date.
+     */
+    private int mDirtyStart = -1;
+    private int mDirtyEnd = -1;
+
+    private final long[] mIdBuffer = new long[ID_WINDOW];
+
+    SectionIndex(int[] sectionStarts, long[] sectionIds, int sectionCount, int itemCount) {
+        mSectionStarts = sectionStarts;
+        mSectionIds = sectionIds;
+        mSectionCount = sectionCount;
+        mItemCount = itemCount;
+    }
+
+    /**
+     * Builds an index by sweeping the header ids of the adapter once.
+     *
+     * @param adapter   to read the header ids from
+     * @param itemCount number of positions in the adapter
+     * @return a new index for the current data set of the adapter
+     */
+    public static SectionIndex build(StickyRecyclerHeadersAdapter adapter, int itemCount) {
+        SectionIndex index = new SectionIndex(new int[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], 0, itemCount);
+        index.rescan(adapter, 0, itemCount - 1);
+        return index;
+    }
+
+    /**
+     * @return the number of positions covered by this index
+     */
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * @return the number of sections in this index
+     */
+    public int getSectionCount() {
+        return mSectionCount;
+    }
+
+    /**
+     * Finds the section that owns a position.
+     *
+     * @param position adapter position
+     * @return index of the section containing the position, or -1 if the position is out of bounds
+     */
+    public int getSectionForPosition(int position) {
+        if (position < 0 || position >= mItemCount) {
+            return -1;
+        }
+        int found = Arrays.binarySearch(mSectionStarts, 0, mSectionCount, position);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * @param section index of the section
+     * @return the first adapter position of the section
+     */
+    public int getSectionStart(int section) {
+        return mSectionStarts[section];
+    }
+
+    /**
+     * @param section index of the section
+     * @return the last adapter position of the section
+     */
+    public int getSectionEnd(int section) {
+        return section + 1 < mSectionCount ? mSectionStarts[section + 1] - 1 : mItemCount - 1;
+    }
+
+    /**
+     * @param section index of the section
+     * @return the header id shared by every position of the section
+     */
+    public long getSectionId(int section) {
+        return mSectionIds[section];
+    }
+
+    /**
+     * @param position adapter position
+     * @return the header id of the position, or -1 if the position is out of bounds
+     */
+    public long getHeaderId(int position) {
+        int section = getSectionForPosition(position);
+        return section < 0 ? -1 : mSectionIds[section];
+    }
+
+    /**
+     * @param position adapter position
+     * @return true if the position is the first one of its section
+     */
+    public boolean isSectionStart(int position) {
+        return position >= 0 && position < mItemCount
+                && Arrays.binarySearch(mSectionStarts, 0, mSectionCount, position) >= 0;
+    }
+
+    /**
+     * @param position adapter position
+     * @return true if the position is the last one of its section
+     */
+    public boolean isSectionEnd(int position) {
+        return position >= 0 && position < mItemCount
+                && (position == mItemCount - 1 || isSectionStart(position + 1));
+    }
+
+    /**
+     * Records that positions were inserted. Boundaries after the insertion are shifted, the
+     * boundaries around the new positions are read again on the next {@link #refresh} call.
+     *
+     * @param positionStart position of the first inserted item
+     * @param itemCount     number of inserted items
+     */
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        for (int i = lowerBound(positionStart); i < mSectionCount; i++) {
+            mSectionStarts[i] += itemCount;
+        }
+        mItemCount += itemCount;
+        if (mDirtyStart >= 0) {
+            mDirtyStart = mDirtyStart >= positionStart ? mDirtyStart + itemCount : mDirtyStart;
+            mDirtyEnd = mDirtyEnd >= positionStart ? mDirtyEnd + itemCount : mDirtyEnd;
+        }
+        markDirty(positionStart, positionStart + itemCount);
+    }
+
+    /**
+     * Records that positions were removed. Sections starting inside the removed range are dropped,
+     * boundaries after it are shifted and the position following the removal is read again on the
+     * next {@link #refresh} call.
+     *
+     * @param positionStart position of the first removed item
+     * @param itemCount     number of removed items
+     */
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        int positionEnd = positionStart + itemCount;
+        int first = lowerBound(positionStart);
+        int last = lowerBound(positionEnd);
+        System.arraycopy(mSectionStarts, last, mSectionStarts, first, mSectionCount - last);
+        System.arraycopy(mSectionIds, last, mSectionIds, first, mSectionCount - last);
+        mSectionCount -= last - first;
+        for (int i = first; i < mSectionCount; i++) {
+            mSectionStarts[i] -= itemCount;
+        }
+        mItemCount -= itemCount;
+        if (mDirtyStart >= 0) {
+            mDirtyStart = positionAfterRemoval(mDirtyStart, positionStart, itemCount);
+            mDirtyEnd = positionAfterRemoval(mDirtyEnd, positionStart, itemCount);
+        }
+        markDirty(positionStart, positionStart);
+    }
+
+    /**
+     * Records that the header ids of positions may have changed. The changed positions and the one
+     * following them are read again on the next {@link #refresh} call.
+     *
+     * @param positionStart position of the first changed item
+     * @param itemCount     number of changed items
+     */
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+        markDirty(positionStart, positionStart + itemCount);
+    }
+
+    /**
+     * Records that items were moved, as a removal followed by an insertion.
+     *
+     * @param fromPosition previous position of the first moved item
+     * @param toPosition   new position of the first moved item
+     * @param itemCount    number of moved items
+     */
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        onItemRangeRemoved(fromPosition, itemCount);
+        onItemRangeInserted(toPosition, itemCount);
+    }
+
+    /**
+     * @return true if some boundaries still have to be read again from the adapter
+     */
+    public boolean isDirty() {
+        return mDirtyStart >= 0;
+    }
+
+    /**
+     * Reads again the boundaries of the positions touched by the recorded changes. Must be called
+     * once the adapter reflects all the changes reported so far.
+     *
+     * @param adapter to read the header ids from
+     */
+    public void refresh(StickyRecyclerHeadersAdapter adapter) {
+        if (mDirtyStart < 0) {
+            return;
+        }
+        int from = Math.max(mDirtyStart, 0);
+        int to = Math.min(mDirtyEnd, mItemCount - 1);
+        mDirtyStart = -1;
+        mDirtyEnd = -1;
+        if (from <= to) {
+            rescan(adapter, from, to);
+        }
+    }
+
+    private void markDirty(int from, int to) {
+        if (mDirtyStart < 0) {
+            mDirtyStart = from;
+            mDirtyEnd = to;
+        } else {
+            mDirtyStart = Math.min(mDirtyStart, from);
+            mDirtyEnd = Math.max(mDirtyEnd, to);
+        }
+    }
+
+    private static int positionAfterRemoval(int position, int positionStart, int itemCount) {
+        if (position < positionStart) {
+            return position;
+        }
+        return position >= positionStart + itemCount ? position - itemCount : positionStart;
+    }
+
+    /**
+     * Replaces the boundaries found in [from, to] with the ones read from the adapter.
+     */
+    private void rescan(StickyRecyclerHeadersAdapter adapter, int from, int to) {
+        int first = lowerBound(from);
+        int last = lowerBound(to + 1);
+        int[] starts = new int[INITIAL_CAPACITY];
+        long[] ids = new long[INITIAL_CAPACITY];
+        int count = 0;
+        long previousId = 0;
+        for (int windowStart = Math.max(from - 1, 0); windowStart <= to; windowStart += ID_WINDOW) {
+            int windowEnd = Math.min(windowStart + ID_WINDOW, to + 1);
+            adapter.getHeaderIds(windowStart, windowEnd, mIdBuffer);
+            for (int position = windowStart; position < windowEnd; position++) {
+                long headerId = mIdBuffer[position - windowStart];
+                if (position >= from && (position == 0 || headerId != previousId)) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    starts[count] = position;
+                    ids[count] = headerId;
+                    count++;
+                }
+                previousId = headerId;
+            }
+        }
+        replaceSections(first, last, starts, ids, count);
+    }
+
+    /**
+     * Replaces the sections in [first, last) with the given ones, keeping the arrays sorted.
+     */
+    private void replaceSections(int first, int last, int[] starts, long[] ids, int count) {
+        int newCount = mSectionCount - (last - first) + count;
+        if (newCount > mSectionStarts.length) {
+            int capacity = Math.max(newCount, mSectionStarts.length * 2);
+            mSectionStarts = Arrays.copyOf(mSectionStarts, capacity);
+            mSectionIds = Arrays.copyOf(mSectionIds, capacity);
+        }
+        System.arraycopy(mSectionStarts, last, mSectionStarts, first + count, mSectionCount - last);
+        System.arraycopy(mSectionIds, last, mSectionIds, first + count, mSectionCount - last);
+        System.arraycopy(starts, 0, mSectionStarts, first, count);
+        System.arraycopy(ids, 0, mSectionIds, first, count);
+        mSectionCount = newCount;
+    }
+
+    /**
+     * @return index of the first section starting at or after the position
+     */
+    private int lowerBound(int position) {
+        int found = Arrays.binarySearch(mSectionStarts, 0, mSectionCount, position);
+        return found >= 0 ? found : -found - 1;
+    }
+}
@@ -1,14 +1,20 @@
 package com.wujf.stickyheaderfooter.headerfooterutil.rendering;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Rect;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.LinearLayout;
 
 import com.wujf.stickyheaderfooter.headerfooterutil.calculation.DimensionCalculator;
+import com.wujf.stickyheaderfooter.headerfooterutil.util.LayoutSnapshot;
 import com.wujf.stickyheaderfooter.headerfooterutil.util.OrientationProvider;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 
 /**
  * Responsible for drawing headers to the canvas provided by the item decoration
@@ -24,6 +30,19 @@ public class HeaderRenderer {
    */
   private final Rect mTempRect = new Rect();
 
+  /**
+   * Layout captured by the overloads that are given the recycler view rather than a snapshot.
+   */
+  private final LayoutSnapshot mLayout = new LayoutSnapshot();
+
+  /**
+   * Bitmap snapshots of the headers, used instead of drawing the header views when enabled through
+   * {@link #setSnapshotsEnabled(boolean)}. Keyed weakly so that dropped header views release theirs.
+   */
+  private final WeakHashMap<View, Snapshot> mSnapshots = new WeakHashMap<>();
+  private final Canvas mSnapshotCanvas = new Canvas();
+  private boolean mSnapshotsEnabled;
+
   public HeaderRenderer(OrientationProvider orientationProvider) {
     this(orientationProvider, new DimensionCalculator());
   }
@@ -44,20 +63,121 @@ public class HeaderRenderer {
    *                     the {@link Rect#left} and {@link Rect#top} properties, respectively.
    */
   public void drawHeader(RecyclerView recyclerView, Canvas canvas, View header, Rect offset) {
+    drawHeader(recyclerView, canvas, header, offset, RecyclerView.NO_ID);
+  }
+
+  /**
+   * Draws a header to a canvas, offsetting by some x and y amount. When snapshots are enabled, the
+   * header is drawn from a bitmap that is only rasterized again when the header is bound to another
+   * id, changes size or is invalidated.
+   *
+   * @param recyclerView the parent recycler view for drawing the header into
+   * @param canvas       the canvas on which to draw the header
+   * @param header       the view to draw as the header
+   * @param offset       a Rect used to define the x/y offset of the header
+   * @param headerId     the id the header is bound to
+   */
+  public void drawHeader(RecyclerView recyclerView, Canvas canvas, View header, Rect offset, long headerId) {
+    mLayout.captureLayout(recyclerView, mOrientationProvider);
+    drawHeader(mLayout, canvas, header, offset, headerId);
+  }
+
+  /**
+   * Same as {@link #drawHeader(RecyclerView, Canvas, View, Rect, long)}, reading the orientation and
+   * the padding from a layout captured once for the whole frame.
+   *
+   * @param layout   of the parent recycler view for drawing the header into
+   * @param canvas   the canvas on which to draw the header
+   * @param header   the view to draw as the header
+   * @param offset   a Rect used to define the x/y offset of the header
+   * @param headerId the id the header is bound to
+   */
+  public void drawHeader(LayoutSnapshot layout, Canvas canvas, View header, Rect offset, long headerId) {
     canvas.save();
 
-    if (recyclerView.getLayoutManager().getClipToPadding()) {
+    if (layout.getClipToPadding()) {
       // Clip drawing of headers to the padding of the RecyclerView. Avoids drawing in the padding
-      initClipRectForHeader(mTempRect, recyclerView, header);
+      initClipRectForHeader(mTempRect, layout, header);
       canvas.clipRect(mTempRect);
     }
 
     canvas.translate(offset.left, offset.top);
 
-    header.draw(canvas);
+    Bitmap snapshot = mSnapshotsEnabled ? getSnapshot(header, headerId) : null;
+    if (snapshot != null) {
+      canvas.drawBitmap(snapshot, 0, 0, null);
+    } else {
+      header.draw(canvas);
+    }
     canvas.restore();
   }
 
+  /**
+   * Enables drawing headers from cached bitmap snapshots instead of drawing their views every frame.
+   * Disabling releases the snapshots.
+   */
+  public void setSnapshotsEnabled(boolean enabled) {
+    mSnapshotsEnabled = enabled;
+    if (!enabled) {
+      mSnapshots.clear();
+    }
+  }
+
+  /**
+   * Marks the snapshot of a header as stale, it is rasterized again the next time it is drawn.
+   *
+   * @param header whose content changed
+   */
+  public void invalidateSnapshot(View header) {
+    Snapshot snapshot = mSnapshots.get(header);
+    if (snapshot != null) {
+      snapshot.mValid = false;
+    }
+  }
+
+  /**
+   * Marks every snapshot as stale.
+   */
+  public void invalidateSnapshots() {
+    for (Map.Entry<View, Snapshot> entry : mSnapshots.entrySet()) {
+      entry.getValue().mValid = false;
+    }
+  }
+
+  /**
+   * Releases every snapshot.
+   */
+  public void clearSnapshots() {
+    mSnapshots.clear();
+  }
+
+  private Bitmap getSnapshot(View header, long headerId) {
+    int width = header.getWidth();
+    int height = header.getHeight();
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    Snapshot snapshot = mSnapshots.get(header);
+    if (snapshot == null) {
+      snapshot = new Snapshot();
+      mSnapshots.put(header, snapshot);
+    }
+    if (snapshot.mBitmap == null || snapshot.mBitmap.getWidth() != width || snapshot.mBitmap.getHeight() != height) {
+      // not recycled: the previous bitmap may still be referenced by the last frame's display list
+      snapshot.mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      snapshot.mValid = false;
+    }
+    if (!snapshot.mValid || snapshot.mHeaderId != headerId) {
+      snapshot.mBitmap.eraseColor(Color.TRANSPARENT);
+      mSnapshotCanvas.setBitmap(snapshot.mBitmap);
+      header.draw(mSnapshotCanvas);
+      mSnapshotCanvas.setBitmap(null);
+      snapshot.mHeaderId = headerId;
+      snapshot.mValid = true;
+    }
+    return snapshot.mBitmap;
+  }
+
   /**
    * Initializes a clipping rect for the header based on the margins of the header and the padding of the
    * recycler.
@@ -66,24 +186,29 @@ public class HeaderRenderer {
    * correctly smaller width and height respectively.
    *
    * @param clipRect {@link Rect} for clipping a provided header to the padding of a recycler view
-   * @param recyclerView for which to provide a header
-   * @param header       for clipping
+   * @param layout   of the recycler view for which to provide a header, clipping to its padding
+   * @param header   for clipping
    */
-  private void initClipRectForHeader(Rect clipRect, RecyclerView recyclerView, View header) {
+  private void initClipRectForHeader(Rect clipRect, LayoutSnapshot layout, View header) {
     mDimensionCalculator.initMargins(clipRect, header);
-    if (mOrientationProvider.getOrientation(recyclerView) == LinearLayout.VERTICAL) {
+    if (layout.getOrientation() == LinearLayout.VERTICAL) {
       clipRect.set(
-          recyclerView.getPaddingLeft(),
-          recyclerView.getPaddingTop(),
-          recyclerView.getWidth() - recyclerView.getPaddingRight() - clipRect.right,
-          recyclerView.getHeight() - recyclerView.getPaddingBottom());
+          layout.getListLeft(),
+          layout.getListTop(),
+          layout.getListRight() - clipRect.right,
+          layout.getListBottom());
     } else {
         clipRect.set(
-          recyclerView.getPaddingLeft(),
-          recyclerView.getPaddingTop(),
-          recyclerView.getWidth() - recyclerView.getPaddingRight(),
-          recyclerView.getHeight() - recyclerView.getPaddingBottom() - clipRect.bottom);
+          layout.getListLeft(),
+          layout.getListTop(),
+          layout.getListRight(),
+          layout.getListBottom() - clipRect.bottom);
     }
   }
 
+  private static final class Snapshot {
+    Bitmap mBitmap;
+    long mHeaderId;
+    boolean mValid;
+  }
 }
@@ -0,0 +1,186 @@
+package com.wujf.stickyheaderfooter.headerfooterutil.util;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * The layout state of a RecyclerView that is read many times while its headers and footers are
+ * offset or drawn: orientation, reverse flag, clip-to-padding, list bounds, child count and visible
+ * adapter positions. It is captured once per pass instead of being asked to the orientation provider
+ * and the layout manager for every child, and does not change until the next capture.
+ */
+public class LayoutSnapshot {
+
+    private RecyclerView mRecyclerView;
+    private int mOrientation;
+    private boolean mReverseLayout;
+    private boolean mClipToPadding;
+    private int mListLeft;
+    private int mListTop;
+    private int mListRight;
+    private int mListBottom;
+    private int mChildCount;
+    private int mFirstPosition = RecyclerView.NO_POSITION;
+    private int mLastPosition = RecyclerView.NO_POSITION;
+    private int mFirstChildPosition = RecyclerView.NO_POSITION;
+    private int mFirstChildStart;
+    private int mLastChildPosition = RecyclerView.NO_POSITION;
+    private int mLastChildEnd;
+
+    /**
+     * Captures the whole layout state, including the edge children compared by
+     * {@link #hasSameLayout(LayoutSnapshot)} and the first and last visible adapter positions.
+     */
+    public void capture(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+        captureEdges(recyclerView, orientationProvider);
+        captureVisiblePositions();
+    }
+
+    /**
+     * Captures the layout state and the edge children, which is all
+     * {@link #hasSameLayout(LayoutSnapshot)} compares, without the visible positions.
+     */
+    public void captureEdges(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+        captureLayout(recyclerView, orientationProvider);
+        if (mChildCount > 0) {
+            View firstChild = recyclerView.getChildAt(0);
+            View lastChild = recyclerView.getChildAt(mChildCount - 1);
+            boolean vertical = mOrientation == LinearLayoutManager.VERTICAL;
+            mFirstChildPosition = recyclerView.getChildAdapterPosition(firstChild);
+            mFirstChildStart = vertical ? firstChild.getTop() : firstChild.getLeft();
+            mLastChildPosition = recyclerView.getChildAdapterPosition(lastChild);
+            mLastChildEnd = vertical ? lastChild.getBottom() : lastChild.getRight();
+        } else {
+            mFirstChildPosition = RecyclerView.NO_POSITION;
+            mLastChildPosition = RecyclerView.NO_POSITION;
+        }
+    }
+
+    /**
+     * Captures the first and last visible adapter positions of the list last captured. Those are only
+     * known from a {@link LinearLayoutManager}, they are {@link RecyclerView#NO_POSITION} otherwise.
+     */
+    public void captureVisiblePositions() {
+        mFirstPosition = RecyclerView.NO_POSITION;
+        mLastPosition = RecyclerView.NO_POSITION;
+        RecyclerView.LayoutManager layoutManager = mRecyclerView.getLayoutManager();
+        if (layoutManager instanceof LinearLayoutManager) {
+            LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+            int first = linearLayoutManager.findFirstVisibleItemPosition();
+            int last = linearLayoutManager.findLastVisibleItemPosition();
+            if (first != RecyclerView.NO_POSITION && last != RecyclerView.NO_POSITION) {
+                // both are in layout order, which is reversed for reverse layouts
+                mFirstPosition = Math.min(first, last);
+                mLastPosition = Math.max(first, last);
+            }
+        }
+    }
+
+    /**
+     * Captures the layout state without the edge children and the visible positions, which keep
+     * their previous values.
+     */
+    public void captureLayout(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+        captureOrientation(recyclerView, orientationProvider);
+        mClipToPadding = recyclerView.getLayoutManager().getClipToPadding();
+        if (mClipToPadding) {
+            mListLeft = recyclerView.getPaddingLeft();
+            mListTop = recyclerView.getPaddingTop();
+            mListRight = recyclerView.getWidth() - recyclerView.getPaddingRight();
+            mListBottom = recyclerView.getHeight() - recyclerView.getPaddingBottom();
+        } else {
+            mListLeft = 0;
+            mListTop = 0;
+            mListRight = recyclerView.getWidth();
+            mListBottom = recyclerView.getHeight();
+        }
+        mChildCount = recyclerView.getChildCount();
+    }
+
+    /**
+     * Captures only the list, its orientation and its reverse flag, which is all item offsets depend
+     * on. The rest of the snapshot keeps its previous values.
+     */
+    public void captureOrientation(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+        mRecyclerView = recyclerView;
+        mOrientation = orientationProvider.getOrientation(recyclerView);
+        mReverseLayout = orientationProvider.isReverseLayout(recyclerView);
+    }
+
+    /**
+     * Tells whether another capture saw the same layout: same list, orientation, bounds and children,
+     * with the first and last children at the same positions and offsets. Headers and footers placed
+     * for one are then still valid for the other, as long as the adapter did not change in between
+     * and the children they were placed from did not move, which the edges alone do not tell.
+     */
+    public boolean hasSameLayout(LayoutSnapshot other) {
+        return mRecyclerView == other.mRecyclerView
+                && mOrientation == other.mOrientation
+                && mReverseLayout == other.mReverseLayout
+                && mClipToPadding == other.mClipToPadding
+                && mListLeft == other.mListLeft
+                && mListTop == other.mListTop
+                && mListRight == other.mListRight
+                && mListBottom == other.mListBottom
+                && mChildCount == other.mChildCount
+                && mFirstChildPosition == other.mFirstChildPosition
+                && mFirstChildStart == other.mFirstChildStart
+                && mLastChildPosition == other.mLastChildPosition
+                && mLastChildEnd == other.mLastChildEnd;
+    }
+
+    public RecyclerView getRecyclerView() {
+        return mRecyclerView;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    public boolean isReverseLayout() {
+        return mReverseLayout;
+    }
+
+    public boolean getClipToPadding() {
+        return mClipToPadding;
+    }
+
+    /**
+     * @return the left edge of the area items are drawn in, which excludes the padding when the
+     * layout manager clips to it
+     */
+    public int getListLeft() {
+        return mListLeft;
+    }
+
+    public int getListTop() {
+        return mListTop;
+    }
+
+    public int getListRight() {
+        return mListRight;
+    }
+
+    public int getListBottom() {
+        return mListBottom;
+    }
+
+    public int getChildCount() {
+        return mChildCount;
+    }
+
+    /**
+     * @return the smallest visible adapter position, or {@link RecyclerView#NO_POSITION}
+     */
+    public int getFirstPosition() {
+        return mFirstPosition;
+    }
+
+    /**
+     * @return the largest visible adapter position, or {@link RecyclerView#NO_POSITION}
+     */
+    public int getLastPosition() {
+        return mLastPosition;
+    }
+}
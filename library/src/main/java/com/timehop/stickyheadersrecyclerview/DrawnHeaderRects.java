@@ -0,0 +1,131 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * The headers drawn during the last frame with their ids and bounds, keyed by adapter position and
+ * sorted by it. The store is cleared at the start of every frame and reuses its Rects, so drawing
+ * allocates nothing and its size follows the number of headers on screen instead of the number of
+ * positions or ids ever drawn.
+ */
+final class DrawnHeaderRects {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] mPositions = new int[INITIAL_CAPACITY];
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private Rect[] mRects = newRects(INITIAL_CAPACITY);
+    private int mSize;
+
+    /**
+     * Forgets every rect, keeping them for reuse.
+     */
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Records a header drawn in the current frame and returns the rect to fill with its bounds. The
+     * rect is reused from a previous frame, its content is undefined.
+     *
+     * @param position adapter position the header is drawn for
+     * @param id       header id
+     * @return a rect owned by the store
+     */
+    Rect obtain(int position, long id) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index >= 0) {
+            mIds[index] = id;
+            return mRects[index];
+        }
+        index = -index - 1;
+        if (mSize == mPositions.length) {
+            // only grows when a single frame draws more headers than ever before
+            mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            mIds = Arrays.copyOf(mIds, mSize * 2);
+            mRects = Arrays.copyOf(mRects, mSize * 2);
+            for (int i = mSize; i < mRects.length; i++) {
+                mRects[i] = new Rect();
+            }
+        }
+        Rect rect = mRects[mSize];
+        System.arraycopy(mPositions, index, mPositions, index + 1, mSize - index);
+        System.arraycopy(mIds, index, mIds, index + 1, mSize - index);
+        System.arraycopy(mRects, index, mRects, index + 1, mSize - index);
+        mPositions[index] = position;
+        mIds[index] = id;
+        mRects[index] = rect;
+        mSize++;
+        return rect;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the index of the header drawn for the position, or a negative number if none was
+     */
+    int indexOfPosition(int position) {
+        return Arrays.binarySearch(mPositions, 0, mSize, position);
+    }
+
+    /**
+     * @return the index of the header drawn with the id, or a negative number if none was
+     */
+    int indexOfId(long id) {
+        // a frame only draws a few headers
+        for (int i = 0; i < mSize; i++) {
+            if (mIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int positionAt(int index) {
+        return mPositions[index];
+    }
+
+    long idAt(int index) {
+        return mIds[index];
+    }
+
+    Rect rectAt(int index) {
+        return mRects[index];
+    }
+
+    /**
+     * Re-keys the rects after a structural change of the adapter. Rects of the removed positions are
+     * dropped and the ones after them are moved by {@code delta}.
+     */
+    void offsetPositions(int positionStart, int removedCount, int delta) {
+        int kept = 0;
+        for (int i = 0; i < mSize; i++) {
+            int position = mPositions[i];
+            if (position >= positionStart && position < positionStart + removedCount) {
+                continue;
+            }
+            if (position >= positionStart + removedCount) {
+                position += delta;
+            }
+            Rect rect = mRects[i];
+            mRects[i] = mRects[kept];
+            mRects[kept] = rect;
+            mPositions[kept] = position;
+            mIds[kept] = mIds[i];
+            kept++;
+        }
+        mSize = kept;
+    }
+
+    private static Rect[] newRects(int capacity) {
+        Rect[] rects = new Rect[capacity];
+        for (int i = 0; i < capacity; i++) {
+            rects[i] = new Rect();
+        }
+        return rects;
+    }
+}
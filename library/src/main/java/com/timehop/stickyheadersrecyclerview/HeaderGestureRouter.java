@@ -0,0 +1,319 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Routes the touch events of a gesture that starts on a sticky header to the clickable view under the
+ * finger, so that it gets pressed, clicked and long-clicked like a view of the list.
+ * <p>
+ * The gesture is followed from {@link #onInterceptTouchEvent} without being intercepted, so that a drag
+ * starting on a header still scrolls the list: it is dropped once the finger moves past the touch slop,
+ * and only its {@code ACTION_UP} is intercepted, which keeps the item under the header from being
+ * clicked too.
+ * <p>
+ * Headers are drawn by the decoration and never attached to a window, so the framework's own handling
+ * does not work for them: what a detached view posts never runs and its invalidations go nowhere. The
+ * router therefore presses and clicks the target itself, schedules the press and the long-press on the
+ * list, and takes over the callback of the target's drawables so that a ripple redraws the region of
+ * the header on screen, frame by frame, without invalidating the rest of the list.
+ */
+final class HeaderGestureRouter implements Drawable.Callback {
+
+    private final RecyclerView mRecyclerView;
+    private final StickyRecyclerHeadersDecoration mDecor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mTouchSlop;
+    private final Rect mBounds = new Rect();
+
+    /**
+     * True while a gesture that went down on a drawn header is followed, with or without a target, and
+     * where it went down.
+     */
+    private boolean mTracking;
+    private float mDownX;
+    private float mDownY;
+
+    /**
+     * The header of the last gesture. Kept after the gesture ends while its drawables may still be
+     * animating.
+     */
+    private int mPosition = RecyclerView.NO_POSITION;
+    private View mHeader;
+
+    /**
+     * The view receiving the gesture in progress, null between gestures, and its origin in the
+     * coordinates of the header.
+     */
+    private View mTarget;
+    private int mTargetLeft;
+    private int mTargetTop;
+    private boolean mLongPressed;
+
+    /**
+     * The view whose drawables call back into the router instead of into the view.
+     */
+    private View mHookedView;
+
+    /**
+     * Presses the target once the tap timeout passes without the finger moving, like a view inside a
+     * scrolling container, so that the start of a scroll does not flash it.
+     */
+    private final Runnable mPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTarget != null) {
+                mTarget.setPressed(true);
+                invalidate();
+            }
+        }
+    };
+
+    private final Runnable mLongPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTarget != null) {
+                mTarget.setTag(mPosition);
+                mLongPressed = mTarget.performLongClick();
+            }
+        }
+    };
+
+    private final Runnable mUnpressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            cancel();
+        }
+    };
+
+    HeaderGestureRouter(RecyclerView recyclerView, StickyRecyclerHeadersDecoration decor) {
+        mRecyclerView = recyclerView;
+        mDecor = decor;
+        mTouchSlop = ViewConfiguration.get(recyclerView.getContext()).getScaledTouchSlop();
+    }
+
+    /**
+     * Follows the events of the gesture in progress.
+     *
+     * @param e an event in the coordinates of the list
+     * @return true for the {@code ACTION_UP} of a gesture that went down on a drawn header and did not
+     * move past the touch slop, which must be intercepted
+     */
+    boolean onInterceptTouchEvent(MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                cancel();
+                mTracking = onDown(e);
+                return false;
+            case MotionEvent.ACTION_MOVE:
+                if (!mTracking) {
+                    return false;
+                }
+                if (Math.abs(e.getX() - mDownX) > mTouchSlop || Math.abs(e.getY() - mDownY) > mTouchSlop) {
+                    // a scroll: the list takes the gesture
+                    cancel();
+                } else if (mTarget != null) {
+                    if (!updateBounds()) {
+                        // the header was not drawn in the last frame
+                        cancel();
+                        return false;
+                    }
+                    setHotspot(e);
+                    invalidate();
+                }
+                return false;
+            case MotionEvent.ACTION_UP:
+                if (!mTracking) {
+                    return false;
+                }
+                mTracking = false;
+                onUp();
+                return true;
+            default:
+                // a second pointer or a cancel ends the gesture
+                cancel();
+                return false;
+        }
+    }
+
+    /**
+     * Starts following a gesture if it goes down on a drawn header, and targets the clickable view
+     * under the finger, if any.
+     *
+     * @return true if the gesture went down on a drawn header
+     */
+    private boolean onDown(MotionEvent e) {
+        int x = (int) e.getX();
+        int y = (int) e.getY();
+        int position = mDecor.findHeaderPositionUnder(x, y);
+        if (position == -1) {
+            return false;
+        }
+        mDownX = e.getX();
+        mDownY = e.getY();
+        View target = mDecor.findHeaderClickTarget(position, x, y);
+        if (target == null) {
+            return true;
+        }
+        mPosition = position;
+        mHeader = mDecor.getHeaderView(mRecyclerView, position);
+        mTarget = target;
+        initTargetOrigin();
+        hookDrawables(target);
+        mLongPressed = false;
+        if (updateBounds()) {
+            setHotspot(e);
+        }
+        mRecyclerView.postDelayed(mPressRunnable, ViewConfiguration.getTapTimeout());
+        if (target.isLongClickable()) {
+            mRecyclerView.postDelayed(mLongPressRunnable, ViewConfiguration.getLongPressTimeout());
+        }
+        return true;
+    }
+
+    /**
+     * Clicks the target, unless it was long-clicked.
+     */
+    private void onUp() {
+        View target = mTarget;
+        if (target == null) {
+            return;
+        }
+        mRecyclerView.removeCallbacks(mLongPressRunnable);
+        if (mLongPressed) {
+            cancel();
+            return;
+        }
+        if (!target.isPressed()) {
+            // up before the tap timeout: show the press briefly, as a view does
+            mRecyclerView.removeCallbacks(mPressRunnable);
+            target.setPressed(true);
+            invalidate();
+            mRecyclerView.postDelayed(mUnpressRunnable, ViewConfiguration.getPressedStateDuration());
+        } else {
+            cancel();
+        }
+        target.setTag(mPosition);
+        target.performClick();
+    }
+
+    /**
+     * Ends the gesture in progress without clicking. The drawables of the target keep redrawing the
+     * header until they are done animating.
+     */
+    void cancel() {
+        mTracking = false;
+        mRecyclerView.removeCallbacks(mPressRunnable);
+        mRecyclerView.removeCallbacks(mLongPressRunnable);
+        mRecyclerView.removeCallbacks(mUnpressRunnable);
+        if (mTarget != null) {
+            mTarget.setPressed(false);
+            mTarget = null;
+            invalidate();
+        }
+    }
+
+    /**
+     * Cancels the gesture in progress and gives the drawables back to their view.
+     */
+    void release() {
+        cancel();
+        unhookDrawables();
+        mHeader = null;
+        mPosition = RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable who) {
+        if (mHeader != null) {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        mHandler.postAtTime(what, who, when);
+    }
+
+    @Override
+    public void unscheduleDrawable(Drawable who, Runnable what) {
+        mHandler.removeCallbacks(what, who);
+    }
+
+    /**
+     * Redraws the header, invalidating only the region it was drawn in during the last frame.
+     */
+    private void invalidate() {
+        mDecor.invalidateHeaderView(mHeader, updateBounds() ? mBounds : null);
+    }
+
+    /**
+     * @return false if the header was not drawn in the last frame
+     */
+    private boolean updateBounds() {
+        Rect bounds = mDecor.getHeaderRect(mPosition);
+        if (bounds == null) {
+            return false;
+        }
+        mBounds.set(bounds);
+        return true;
+    }
+
+    private void initTargetOrigin() {
+        int left = 0;
+        int top = 0;
+        View view = mTarget;
+        while (view != mHeader) {
+            View parent = (View) view.getParent();
+            left += view.getLeft() - parent.getScrollX();
+            top += view.getTop() - parent.getScrollY();
+            view = parent;
+        }
+        mTargetLeft = left;
+        mTargetTop = top;
+    }
+
+    private float getTargetX(MotionEvent e) {
+        return e.getX() - mBounds.left - mTargetLeft;
+    }
+
+    private float getTargetY(MotionEvent e) {
+        return e.getY() - mBounds.top - mTargetTop;
+    }
+
+    private void setHotspot(MotionEvent e) {
+        mTarget.drawableHotspotChanged(getTargetX(e), getTargetY(e));
+    }
+
+    private void hookDrawables(View view) {
+        if (mHookedView == view) {
+            return;
+        }
+        unhookDrawables();
+        mHookedView = view;
+        setCallback(view.getBackground(), view, this);
+        setCallback(view.getForeground(), view, this);
+    }
+
+    private void unhookDrawables() {
+        if (mHookedView == null) {
+            return;
+        }
+        setCallback(mHookedView.getBackground(), this, mHookedView);
+        setCallback(mHookedView.getForeground(), this, mHookedView);
+        mHookedView = null;
+    }
+
+    private static void setCallback(Drawable drawable, Drawable.Callback from, Drawable.Callback to) {
+        if (drawable != null && drawable.getCallback() == from) {
+            drawable.setCallback(to);
+        }
+    }
+}
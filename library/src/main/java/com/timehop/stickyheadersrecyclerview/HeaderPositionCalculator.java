@@ -10,6 +10,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.timehop.stickyheadersrecyclerview.caching.HeaderProvider;
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.calculation.SectionIndex;
+import com.timehop.stickyheadersrecyclerview.calculation.SectionIndexBuilder;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
 /**
@@ -21,6 +23,9 @@ public class HeaderPositionCalculator {
     private final OrientationProvider mOrientationProvider;
     private final HeaderProvider mHeaderProvider;
     private final DimensionCalculator mDimensionCalculator;
+    private SectionIndex mSectionIndex;
+    private SectionIndexBuilder mSectionIndexBuilder;
+    private boolean mSectionIndexPending;
 
     /**
      * The following fields are used as buffers for internal calculations. Their sole purpose is to avoid
@@ -59,7 +64,7 @@ public class HeaderPositionCalculator {
             margin = mTempRect1.left;
         }
 
-        return offset <= margin && mAdapter.getHeaderId(position) >= 0;
+        return offset <= margin && getHeaderId(position) >= 0;
     }
 
     /**
@@ -81,20 +86,149 @@ public class HeaderPositionCalculator {
             return hasNewHeader(firstItemOnRowPosition, isReverseLayout);
         }
 
+        SectionIndex sectionIndex = getSectionIndex();
+        if (sectionIndex != null) {
+            boolean isBoundary = isReverseLayout ? sectionIndex.isSectionEnd(position) : sectionIndex.isSectionStart(position);
+            return isBoundary && sectionIndex.getHeaderId(position) >= 0;
+        }
+        return hasDifferentHeaderId(position, position + (isReverseLayout ? 1 : -1));
+    }
+
+    /**
+     * Compares the header id of a position with the one of its neighbour by asking the adapter. Used
+     * while no section index is available.
+     */
+    private boolean hasDifferentHeaderId(int position, int neighbourPosition) {
         long headerId = mAdapter.getHeaderId(position);
 
         if (headerId < 0) {
             return false;
         }
 
-        long nextItemHeaderId = -1;
-        int nextItemPosition = position + (isReverseLayout ? 1 : -1);
-        if (!indexOutOfBounds(nextItemPosition)) {
-            nextItemHeaderId = mAdapter.getHeaderId(nextItemPosition);
+        long neighbourHeaderId = -1;
+        if (!indexOutOfBounds(neighbourPosition)) {
+            neighbourHeaderId = mAdapter.getHeaderId(neighbourPosition);
+        }
+        return headerId != neighbourHeaderId;
+    }
+
+    private long getHeaderId(int position) {
+        SectionIndex sectionIndex = getSectionIndex();
+        return sectionIndex != null ? sectionIndex.getHeaderId(position) : mAdapter.getHeaderId(position);
+    }
+
+    /**
+     * Returns the section index of the current data set, building it on first use. The index is
+     * updated in place from the {@code onItemRange*} callbacks and rebuilt when the item count no
+     * longer matches or after {@link #invalidateSectionIndex()}.
+     * <p>
+     * With a {@link SectionIndexBuilder} set, the index is built in the background and this returns
+     * null until it has been delivered; callers then ask the adapter directly.
+     *
+     * @return the section index for the adapter, or null while it is being built
+     */
+    public SectionIndex getSectionIndex() {
+        int itemCount = mAdapter.getItemCount();
+        if (mSectionIndex != null && mSectionIndex.getItemCount() == itemCount) {
+            mSectionIndex.refresh(mAdapter);
+            return mSectionIndex;
+        }
+        if (mSectionIndexBuilder == null) {
+            mSectionIndex = SectionIndex.build(mAdapter, itemCount);
+            return mSectionIndex;
+        }
+        mSectionIndex = null;
+        if (!mSectionIndexPending) {
+            mSectionIndexPending = true;
+            mSectionIndexBuilder.build(itemCount, new SectionIndexBuilder.Callback() {
+                @Override
+                public void onSectionIndexBuilt(SectionIndex sectionIndex) {
+                    mSectionIndexPending = false;
+                    if (sectionIndex.getItemCount() == mAdapter.getItemCount()) {
+                        mSectionIndex = sectionIndex;
+                    }
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Builds the section index in the background with the given builder instead of on first use.
+     *
+     * @param builder to build the index with, or null to build it synchronously
+     */
+    public void setSectionIndexBuilder(SectionIndexBuilder builder) {
+        invalidateSectionIndex();
+        mSectionIndexBuilder = builder;
+    }
+
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        cancelPendingSectionIndex();
+        if (mSectionIndex != null) {
+            mSectionIndex.onItemRangeMoved(fromPosition, toPosition, itemCount);
+        }
+    }
+
+    /**
+     * Drops the section index so that it is rebuilt from the adapter on next use.
+     */
+    public void invalidateSectionIndex() {
+        cancelPendingSectionIndex();
+        mSectionIndex = null;
+    }
+
+    /**
+     * Drops a background build that no longer matches the data set; a new one is started on next use.
+     */
+    private void cancelPendingSectionIndex() {
+        if (mSectionIndexPending) {
+            mSectionIndexBuilder.cancel();
+            mSectionIndexPending = false;
         }
-        int firstItemPosition = isReverseLayout ? mAdapter.getItemCount() - 1 : 0;
+    }
 
-        return position == firstItemPosition || headerId != nextItemHeaderId;
+    /**
+     * Fills {@code outMargins} with the margins of the header of a position and returns its size along
+     * the scroll direction. Uses the fixed size declared by the adapter when there is one, so that the
+     * header view is not created or measured.
+     *
+     * @param recyclerView that displays the header
+     * @param position     that is headed by the header
+     * @param outMargins   receives the margins of the header
+     * @return the height of the header in a vertical list, its width in a horizontal one
+     */
+    public int getHeaderExtent(RecyclerView recyclerView, int position, Rect outMargins) {
+        outMargins.setEmpty();
+        int extent = mAdapter.getFixedHeaderExtent(outMargins);
+        if (extent >= 0) {
+            return extent;
+        }
+        View header = mHeaderProvider.getHeader(recyclerView, position);
+        mDimensionCalculator.initMargins(outMargins, header);
+        return mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL
+                ? header.getHeight() : header.getWidth();
     }
 
     private boolean indexOutOfBounds(int position) {
@@ -108,9 +242,8 @@ public class HeaderPositionCalculator {
         if (firstHeader && isStickyHeaderBeingPushedOffscreen(recyclerView, header)) {
             View viewAfterNextHeader = getFirstViewUnobscuredByHeader(recyclerView, header);
             int firstViewUnderHeaderPosition = recyclerView.getChildAdapterPosition(viewAfterNextHeader);
-            View secondHeader = mHeaderProvider.getHeader(recyclerView, firstViewUnderHeaderPosition);
             translateHeaderWithNextHeader(recyclerView, mOrientationProvider.getOrientation(recyclerView), bounds,
-                    header, viewAfterNextHeader, secondHeader);
+                    header, viewAfterNextHeader, firstViewUnderHeaderPosition);
         }
     }
 
@@ -152,18 +285,17 @@ public class HeaderPositionCalculator {
 
         boolean isReverseLayout = mOrientationProvider.isReverseLayout(recyclerView);
         if (firstViewUnderHeaderPosition > 0 && hasNewHeader(firstViewUnderHeaderPosition, isReverseLayout)) {
-            View nextHeader = mHeaderProvider.getHeader(recyclerView, firstViewUnderHeaderPosition);
-            mDimensionCalculator.initMargins(mTempRect1, nextHeader);
+            int nextHeaderExtent = getHeaderExtent(recyclerView, firstViewUnderHeaderPosition, mTempRect1);
             mDimensionCalculator.initMargins(mTempRect2, stickyHeader);
 
             if (mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL) {
-                int topOfNextHeader = viewAfterHeader.getTop() - mTempRect1.bottom - nextHeader.getHeight() - mTempRect1.top;
+                int topOfNextHeader = viewAfterHeader.getTop() - mTempRect1.bottom - nextHeaderExtent - mTempRect1.top;
                 int bottomOfThisHeader = recyclerView.getPaddingTop() + stickyHeader.getBottom() + mTempRect2.top + mTempRect2.bottom;
                 if (topOfNextHeader < bottomOfThisHeader) {
                     return true;
                 }
             } else {
-                int leftOfNextHeader = viewAfterHeader.getLeft() - mTempRect1.right - nextHeader.getWidth() - mTempRect1.left;
+                int leftOfNextHeader = viewAfterHeader.getLeft() - mTempRect1.right - nextHeaderExtent - mTempRect1.left;
                 int rightOfThisHeader = recyclerView.getPaddingLeft() + stickyHeader.getRight() + mTempRect2.left + mTempRect2.right;
                 if (leftOfNextHeader < rightOfThisHeader) {
                     return true;
@@ -175,18 +307,18 @@ public class HeaderPositionCalculator {
     }
 
     private void translateHeaderWithNextHeader(RecyclerView recyclerView, int orientation, Rect translation,
-                                               View currentHeader, View viewAfterNextHeader, View nextHeader) {
-        mDimensionCalculator.initMargins(mTempRect1, nextHeader);
+                                               View currentHeader, View viewAfterNextHeader, int nextHeaderPosition) {
+        int nextHeaderExtent = getHeaderExtent(recyclerView, nextHeaderPosition, mTempRect1);
         mDimensionCalculator.initMargins(mTempRect2, currentHeader);
         if (orientation == LinearLayoutManager.VERTICAL) {
             int topOfStickyHeader = getListTop(recyclerView) + mTempRect2.top + mTempRect2.bottom;
-            int shiftFromNextHeader = viewAfterNextHeader.getTop() - nextHeader.getHeight() - mTempRect1.bottom - mTempRect1.top - currentHeader.getHeight() - topOfStickyHeader;
+            int shiftFromNextHeader = viewAfterNextHeader.getTop() - nextHeaderExtent - mTempRect1.bottom - mTempRect1.top - currentHeader.getHeight() - topOfStickyHeader;
             if (shiftFromNextHeader < topOfStickyHeader) {
                 translation.top += shiftFromNextHeader;
             }
         } else {
             int leftOfStickyHeader = getListLeft(recyclerView) + mTempRect2.left + mTempRect2.right;
-            int shiftFromNextHeader = viewAfterNextHeader.getLeft() - nextHeader.getWidth() - mTempRect1.right - mTempRect1.left - currentHeader.getWidth() - leftOfStickyHeader;
+            int shiftFromNextHeader = viewAfterNextHeader.getLeft() - nextHeaderExtent - mTempRect1.right - mTempRect1.left - currentHeader.getWidth() - leftOfStickyHeader;
             if (shiftFromNextHeader < leftOfStickyHeader) {
                 translation.left += shiftFromNextHeader;
             }
@@ -1,37 +1,45 @@
 package com.timehop.stickyheadersrecyclerview;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.util.Log;
-import android.util.SparseArray;
+import android.view.Display;
 import android.view.View;
 
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.timehop.stickyheadersrecyclerview.caching.ClickTargets;
 import com.timehop.stickyheadersrecyclerview.caching.HeaderProvider;
 import com.timehop.stickyheadersrecyclerview.caching.HeaderViewCache;
+import com.timehop.stickyheadersrecyclerview.caching.HeaderViewPool;
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.calculation.SectionIndexBuilder;
 import com.timehop.stickyheadersrecyclerview.rendering.HeaderRenderer;
 import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration {
 
     private final StickyRecyclerHeadersAdapter mAdapter;
     private final ItemVisibilityAdapter mVisibilityAdapter;
-    private final SparseArray<Rect> mHeaderRects = new SparseArray<>();
-    private final HashMap<Long, Rect> mHeaderRectsById = new HashMap<>();
-    private final HashMap<Long, Integer> mHeaderLastPosition = new HashMap<>();
+    private final DrawnHeaderRects mHeaderRects = new DrawnHeaderRects();
     private final HeaderProvider mHeaderProvider;
     private final OrientationProvider mOrientationProvider;
     private final HeaderPositionCalculator mHeaderPositionCalculator;
     private final HeaderRenderer mRenderer;
     private final DimensionCalculator mDimensionCalculator;
+    private final SectionDataObserver mSectionDataObserver = new SectionDataObserver();
+    private boolean mObservingAdapter;
     private int mDefaultHeight = 0;
+    private final HeaderPrefetcher mHeaderPrefetcher = new HeaderPrefetcher();
+    private boolean mHeaderPrefetchEnabled;
 
     /**
      * The following field is used as a buffer for internal calculations. Its sole purpose is to avoid
@@ -39,19 +47,44 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
      */
     private final Rect mTempRect = new Rect();
 
+    /**
+     * The list this decoration last drew on, used to redraw it from {@link #notifyHeaderChanged}.
+     */
+    private RecyclerView mRecyclerView;
+
+    private Context mTrimMemoryContext;
+    private ComponentCallbacks2 mTrimMemoryCallbacks;
+
     // TODO: Consider passing in orientation to simplify orientation accounting within calculation
     public StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter) {
-        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), null);
+        this(adapter, null, new HeaderViewPool());
     }
 
     public StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, ItemVisibilityAdapter visibilityAdapter) {
-        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), visibilityAdapter);
+        this(adapter, visibilityAdapter, new HeaderViewPool());
+    }
+
+    /**
+     * Creates a decoration that takes its header holders from the given pool and returns them there,
+     * like {@link RecyclerView#setRecycledViewPool}. Decorations of lists showing the same kind of
+     * sections, for instance in several tabs, can share a pool so that a list rebinds the headers
+     * another one released instead of inflating its own, see {@link #recycleHeaders()}. A pool must
+     * only be shared between lists of the same activity.
+     *
+     * @param adapter           the adapter of the list
+     * @param visibilityAdapter optional, may be null
+     * @param pool              pool of header holders
+     */
+    public StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, ItemVisibilityAdapter visibilityAdapter,
+                                           HeaderViewPool pool) {
+        this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), visibilityAdapter, pool);
     }
 
     private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, OrientationProvider orientationProvider,
-                                            DimensionCalculator dimensionCalculator, ItemVisibilityAdapter visibilityAdapter) {
+                                            DimensionCalculator dimensionCalculator, ItemVisibilityAdapter visibilityAdapter,
+                                            HeaderViewPool pool) {
         this(adapter, orientationProvider, dimensionCalculator, new HeaderRenderer(orientationProvider),
-                new HeaderViewCache(adapter, orientationProvider), visibilityAdapter);
+                new HeaderViewCache(adapter, orientationProvider, pool), visibilityAdapter);
     }
 
     private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, OrientationProvider orientationProvider,
@@ -71,6 +104,25 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
         mDimensionCalculator = dimensionCalculator;
         mHeaderPositionCalculator = headerPositionCalculator;
         mVisibilityAdapter = visibilityAdapter;
+        if (adapter instanceof RecyclerView.Adapter) {
+            ((RecyclerView.Adapter) adapter).registerAdapterDataObserver(mSectionDataObserver);
+            mObservingAdapter = true;
+        }
+    }
+
+    /**
+     * Detaches the decoration from its adapter, which otherwise keeps it alive through the observer
+     * that follows its changes, and unregisters everything else it registered. Call it once the
+     * decoration is removed from its list or the list is destroyed; it must not be used afterwards.
+     */
+    public void release() {
+        if (mObservingAdapter) {
+            ((RecyclerView.Adapter) mAdapter).unregisterAdapterDataObserver(mSectionDataObserver);
+            mObservingAdapter = false;
+        }
+        unregisterMemoryTrimming();
+        mHeaderPrefetcher.detach();
+        mRecyclerView = null;
     }
 
     @Override
@@ -81,8 +133,8 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
             return;
         }
         if (mHeaderPositionCalculator.hasNewHeader(itemPosition, mOrientationProvider.isReverseLayout(parent))) {
-            View header = getHeaderView(parent, itemPosition);
-            setItemOffsetsForHeader(outRect, header, mOrientationProvider.getOrientation(parent));
+            int extent = mHeaderPositionCalculator.getHeaderExtent(parent, itemPosition, mTempRect);
+            setItemOffsetsForHeader(outRect, extent, mTempRect, mOrientationProvider.getOrientation(parent));
         }
     }
 
@@ -90,15 +142,15 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
      * Sets the offsets for the first item in a section to make room for the header view
      *
      * @param itemOffsets rectangle to define offsets for the item
-     * @param header      view used to calculate offset for the item
+     * @param extent      size of the header along the scroll direction
+     * @param margins     margins of the header
      * @param orientation used to calculate offset for the item
      */
-    private void setItemOffsetsForHeader(Rect itemOffsets, View header, int orientation) {
-        mDimensionCalculator.initMargins(mTempRect, header);
+    private void setItemOffsetsForHeader(Rect itemOffsets, int extent, Rect margins, int orientation) {
         if (orientation == LinearLayoutManager.VERTICAL) {
-            itemOffsets.top = header.getHeight() + mTempRect.top + mTempRect.bottom;
+            itemOffsets.top = extent + margins.top + margins.bottom;
         } else {
-            itemOffsets.left = header.getWidth() + mTempRect.left + mTempRect.right;
+            itemOffsets.left = extent + margins.left + margins.right;
         }
     }
 
@@ -106,6 +158,12 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
     public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
         super.onDrawOver(canvas, parent, state);
 
+        mRecyclerView = parent;
+        mHeaderProvider.beginFrame();
+        mHeaderRects.clear();
+        if (mHeaderPrefetchEnabled) {
+            mHeaderPrefetcher.attach(parent, state);
+        }
         final int childCount = parent.getChildCount();
         if (childCount <= 0 || mAdapter.getItemCount() <= 0) {
             return;
@@ -122,50 +180,63 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
             boolean hasStickyHeader = mHeaderPositionCalculator.hasStickyHeader(itemView, mOrientationProvider.getOrientation(parent), position);
             if (hasStickyHeader || mHeaderPositionCalculator.hasNewHeader(position, mOrientationProvider.isReverseLayout(parent))) {
                 View header = mHeaderProvider.getHeader(parent, position);
-                //re-use existing Rect, if any.
-                Rect headerOffset = mHeaderRects.get(position);
-                if (headerOffset == null) {
-                    headerOffset = new Rect();
-                    mHeaderRects.put(position, headerOffset);
-                }
+                long id = mAdapter.getHeaderId(position);
+                Rect headerOffset = mHeaderRects.obtain(position, id);
                 mHeaderPositionCalculator.initHeaderBounds(headerOffset, parent, header, itemView, hasStickyHeader);
-                mRenderer.drawHeader(parent, canvas, header, headerOffset);
+                mRenderer.drawHeader(parent, canvas, header, headerOffset, id);
                 if (mDefaultHeight == 0) {
                     mDefaultHeight = header.getHeight();
                 }
-                Long id = mAdapter.getHeaderId(position);
-                mHeaderRectsById.put(id, headerOffset);
-                mHeaderLastPosition.put(id, position);
             }
         }
     }
 
     /**
-     * Gets the position of the header under the specified (x, y) coordinates.
+     * Gets the position of the header under the specified (x, y) coordinates. Where headers overlap,
+     * as when the sticky header is being pushed by the next one, the topmost is returned: headers are
+     * drawn by increasing position, so the rects are visited from the last one drawn.
      *
      * @param x x-coordinate
      * @param y y-coordinate
      * @return position of header, or -1 if not found
      */
     public int findHeaderPositionUnder(int x, int y) {
-        for (Map.Entry<Long, Rect> entry : mHeaderRectsById.entrySet()) {
-            Rect rect = entry.getValue();
+        for (int i = mHeaderRects.size() - 1; i >= 0; i--) {
+            Rect rect = mHeaderRects.rectAt(i);
             Rect realRect = rect;
             if (rect.height() > mDefaultHeight) {
-                realRect = new Rect(rect.left, rect.top, rect.right, rect.top + mDefaultHeight);
+                realRect = mTempRect;
+                realRect.set(rect.left, rect.top, rect.right, rect.top + mDefaultHeight);
             }
             if (realRect.contains(x, y)) {
-                Integer position = mHeaderLastPosition.get(entry.getKey());
-                if (position != null) {
-                    if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
-                        return position;
-                    }
+                int position = mHeaderRects.positionAt(i);
+                if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
+                    return position;
                 }
             }
         }
         return -1;
     }
 
+    /**
+     * Finds the clickable view of a drawn header that is under the specified (x, y) coordinates.
+     *
+     * @param position position of the header, as returned by {@link #findHeaderPositionUnder}
+     * @param x        x-coordinate
+     * @param y        y-coordinate
+     * @return the deepest clickable view of the header under the point, or null if there is none
+     */
+    public View findHeaderClickTarget(int position, int x, int y) {
+        int index = mHeaderRects.indexOfPosition(position);
+        ClickTargets targets = mHeaderProvider.getHeaderClickTargets(position);
+        if (index < 0 || targets == null) {
+            return null;
+        }
+        // the header is laid out at (0, 0) and drawn translated to the origin of its rect
+        Rect rect = mHeaderRects.rectAt(index);
+        return targets.findTarget(x - rect.left, y - rect.top);
+    }
+
     /**
      * Gets the header view for the associated position.  If it doesn't exist yet, it will be
      * created, measured, and laid out.
@@ -178,19 +249,365 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
         return mHeaderProvider.getHeader(parent, position);
     }
 
+    /**
+     * Builds the section index on a background thread instead of on the first draw. Until the index
+     * is delivered, header positions are computed by asking the adapter for each position.
+     *
+     * @param builder to build the section index with, or null to build it synchronously
+     */
+    public void setSectionIndexBuilder(SectionIndexBuilder builder) {
+        mHeaderPositionCalculator.setSectionIndexBuilder(builder);
+    }
+
+    /**
+     * Binds and measures the headers of the positions in the layout manager's prefetch window right
+     * after each scroll, in the same gap between frames as the items prefetched by RecyclerView,
+     * instead of in the frame that shows them.
+     *
+     * @param enabled true to prefetch headers
+     */
+    public void setHeaderPrefetchEnabled(boolean enabled) {
+        mHeaderPrefetchEnabled = enabled;
+        if (!enabled) {
+            mHeaderPrefetcher.detach();
+        }
+    }
+
+    /**
+     * Registers for {@link ComponentCallbacks2} so that cached headers are released when the system is
+     * low on memory or the app goes to the background, see {@link #trimMemory(int)}. Call
+     * {@link #unregisterMemoryTrimming()} when the list is destroyed.
+     *
+     * @param context any context, only its application context is kept
+     */
+    public void registerMemoryTrimming(Context context) {
+        unregisterMemoryTrimming();
+        mTrimMemoryContext = context.getApplicationContext();
+        mTrimMemoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        };
+        mTrimMemoryContext.registerComponentCallbacks(mTrimMemoryCallbacks);
+    }
+
+    public void unregisterMemoryTrimming() {
+        if (mTrimMemoryCallbacks != null) {
+            mTrimMemoryContext.unregisterComponentCallbacks(mTrimMemoryCallbacks);
+            mTrimMemoryCallbacks = null;
+            mTrimMemoryContext = null;
+        }
+    }
+
+    /**
+     * Releases memory according to a trim level. While the list is visible, pooled and off-screen
+     * headers are dropped along with the recorded display lists; once the UI is hidden every cached
+     * header and drawn rect goes. Everything is rebuilt lazily on the next draw.
+     *
+     * @param level a {@code ComponentCallbacks2.TRIM_MEMORY_*} level
+     */
+    public void trimMemory(int level) {
+        mHeaderProvider.trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mRenderer.clear();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mHeaderRects.clear();
+        }
+    }
+
+    /**
+     * Draws headers from display lists recorded once per bind and size on API 29+ hardware-accelerated
+     * canvases, instead of drawing their view trees every frame. Off by default. While enabled, a
+     * header whose content changes without a new id or size, such as an image loaded later, an
+     * animated drawable or a checked state, keeps showing its old content until
+     * {@link #invalidateHeaderView(View)} is called for it, or {@link #invalidateHeaders()}.
+     *
+     * @param enabled true to draw headers from recorded display lists
+     */
+    public void setRenderNodeCachingEnabled(boolean enabled) {
+        mRenderer.setRenderNodeCachingEnabled(enabled);
+        if (mRecyclerView != null) {
+            mRecyclerView.invalidate();
+        }
+    }
+
+    /**
+     * Bounds the number and the estimated memory of cached header views. Headers currently on screen
+     * are never evicted.
+     *
+     * @param maxCount maximum number of cached headers
+     * @param maxBytes maximum estimated size of the cached headers, in bytes
+     */
+    public void setHeaderCacheLimits(int maxCount, long maxBytes) {
+        mHeaderProvider.setCacheLimits(maxCount, maxBytes);
+    }
+
+    /**
+     * @return the estimated size of the cached header views, in bytes
+     */
+    public long getHeaderCacheBytes() {
+        return mHeaderProvider.getCacheBytes();
+    }
+
+    /**
+     * Updates a single header in place: its cached holder is bound again with the payload through
+     * {@link StickyRecyclerHeadersAdapter#onBindHeaderViewHolder(RecyclerView.ViewHolder, int, java.util.List)}
+     * and only that header is drawn again. The list is laid out again only if the header changed
+     * size. Unlike {@link #invalidateHeaders()}, nothing is inflated and other headers are untouched.
+     *
+     * @param headerId id of the changed header
+     * @param payload  passed to the adapter, may be null for a full bind
+     */
+    public void notifyHeaderChanged(long headerId, Object payload) {
+        RecyclerView parent = mRecyclerView;
+        int position = parent == null ? RecyclerView.NO_POSITION : findDrawnHeaderPosition(headerId);
+        if (position == RecyclerView.NO_POSITION) {
+            // not on screen: drop the cached header, it is bound from scratch when it shows up
+            mHeaderProvider.rebindHeader(parent, headerId, RecyclerView.NO_POSITION, payload);
+            return;
+        }
+        boolean resized = mHeaderProvider.rebindHeader(parent, headerId, position, payload);
+        mRenderer.invalidateHeader(mHeaderProvider.getHeader(parent, position));
+        if (resized) {
+            parent.invalidateItemDecorations();
+        } else {
+            parent.invalidate();
+        }
+    }
+
+    /**
+     * Draws a header again after its look changed without a rebind, such as its pressed state,
+     * dropping its recorded display list if it has one.
+     *
+     * @param header header view, as returned by {@link #getHeaderView}
+     */
+    public void invalidateHeaderView(View header) {
+        invalidateHeaderView(header, null);
+    }
+
+    /**
+     * Like {@link #invalidateHeaderView(View)}, but only invalidates the region of the list the header
+     * is drawn in, such as while one of its drawables animates.
+     *
+     * @param header header view
+     * @param bounds where the header is drawn, see {@link #getHeaderRect}, or null for the whole list
+     */
+    public void invalidateHeaderView(View header, Rect bounds) {
+        mRenderer.invalidateHeader(header);
+        if (mRecyclerView == null) {
+            return;
+        }
+        if (bounds != null) {
+            mRecyclerView.invalidate(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        } else {
+            mRecyclerView.invalidate();
+        }
+    }
+
+    /**
+     * @return the position the given header was drawn for in the last frame, or {@link RecyclerView#NO_POSITION}
+     */
+    private int findDrawnHeaderPosition(long headerId) {
+        int index = mHeaderRects.indexOfId(headerId);
+        if (index < 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        int position = mHeaderRects.positionAt(index);
+        if (position >= mAdapter.getItemCount() || mAdapter.getHeaderId(position) != headerId) {
+            return RecyclerView.NO_POSITION;
+        }
+        return position;
+    }
+
     /**
      * Invalidates cached headers.  This does not invalidate the recyclerview, you should do that manually after
      * calling this method.
      */
     public void invalidateHeaders() {
         mHeaderProvider.invalidate();
+        mRenderer.invalidateHeaders();
         mHeaderRects.clear();
-        mHeaderRectsById.clear();
-        mHeaderLastPosition.clear();
+        mHeaderPositionCalculator.invalidateSectionIndex();
+    }
+
+    /**
+     * Hands every cached header holder to the pool, without invalidating anything else. Call it when
+     * the list goes off screen so that lists sharing the pool can rebind them.
+     */
+    public void recycleHeaders() {
+        mHeaderProvider.invalidate();
+        mRenderer.clear();
     }
 
+    /**
+     * @param position adapter position
+     * @return the bounds of the header drawn for the position during the last frame, or null if the
+     * last frame drew none. The rect is reused by the next frame.
+     */
     public Rect getHeaderRect(int position) {
-        return mHeaderRects.get(position);
+        int index = mHeaderRects.indexOfPosition(position);
+        return index < 0 ? null : mHeaderRects.rectAt(index);
+    }
+
+    /**
+     * Re-keys the drawn header rects after a structural change. Rects of the removed positions are
+     * dropped and the ones after them are moved by {@code delta}.
+     */
+    private void offsetHeaderPositions(int positionStart, int removedCount, int delta) {
+        mHeaderRects.offsetPositions(positionStart, removedCount, delta);
+    }
+
+    /**
+     * Keeps the section index and the cached header rects in step with the adapter, so granular
+     * changes only touch the affected sections instead of invalidating everything.
+     */
+    private class SectionDataObserver extends RecyclerView.AdapterDataObserver {
+
+        @Override
+        public void onChanged() {
+            mHeaderPrefetcher.discard();
+            invalidateHeaders();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mHeaderPositionCalculator.onItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeInserted(positionStart, itemCount);
+            offsetHeaderPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeRemoved(positionStart, itemCount);
+            offsetHeaderPositions(positionStart, itemCount, -itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mHeaderPrefetcher.discard();
+            mHeaderPositionCalculator.onItemRangeMoved(fromPosition, toPosition, itemCount);
+            offsetHeaderPositions(fromPosition, itemCount, -itemCount);
+            offsetHeaderPositions(toPosition, 0, itemCount);
+        }
     }
 
+    /**
+     * Runs the layout manager's own prefetch window computation after every scroll, and binds the
+     * headers of the sections starting inside that window in a runnable posted from the scroll. Like
+     * RecyclerView's GapWorker, it runs once the frame that scrolled is done and stops binding when the
+     * next frame is due, the positions left being collected again on the next scroll.
+     * <p>
+     * The layout manager reports layout positions, which only match adapter positions while no adapter
+     * update is pending, so nothing is collected or bound during one and the positions collected
+     * before a structural change are discarded.
+     */
+    private class HeaderPrefetcher extends RecyclerView.OnScrollListener
+            implements RecyclerView.LayoutManager.LayoutPrefetchRegistry, Runnable {
+
+        private static final long DEFAULT_FRAME_INTERVAL_NS = 1000000000L / 60;
+
+        private int[] mPositions = new int[4];
+        private int mCount;
+        private RecyclerView mRecyclerView;
+        private RecyclerView.State mState;
+        private boolean mPosted;
+
+        void attach(RecyclerView recyclerView, RecyclerView.State state) {
+            mState = state;
+            if (mRecyclerView != recyclerView) {
+                detach();
+                mRecyclerView = recyclerView;
+                recyclerView.addOnScrollListener(this);
+            }
+        }
+
+        void detach() {
+            if (mRecyclerView != null) {
+                mRecyclerView.removeOnScrollListener(this);
+                mRecyclerView.removeCallbacks(this);
+                mRecyclerView = null;
+            }
+            mPosted = false;
+            mCount = 0;
+        }
+
+        /**
+         * Forgets the positions collected so far, they no longer designate the same items.
+         */
+        void discard() {
+            mCount = 0;
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (layoutManager == null || !layoutManager.isItemPrefetchEnabled() || (dx == 0 && dy == 0)
+                    || recyclerView.hasPendingAdapterUpdates()) {
+                return;
+            }
+            layoutManager.collectAdjacentPrefetchPositions(dx, dy, mState, this);
+            if (mCount > 0 && !mPosted) {
+                mPosted = true;
+                recyclerView.post(this);
+            }
+        }
+
+        @Override
+        public void addPosition(int layoutPosition, int pixelDistance) {
+            if (mCount == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mCount * 2);
+            }
+            mPositions[mCount++] = layoutPosition;
+        }
+
+        @Override
+        public void run() {
+            mPosted = false;
+            if (mRecyclerView.hasPendingAdapterUpdates()) {
+                mCount = 0;
+                return;
+            }
+            long deadlineNs = getNextFrameNs();
+            int itemCount = mAdapter.getItemCount();
+            boolean reverseLayout = mOrientationProvider.isReverseLayout(mRecyclerView);
+            for (int i = 0; i < mCount && System.nanoTime() < deadlineNs; i++) {
+                int position = mPositions[i];
+                if (position >= 0 && position < itemCount
+                        && mHeaderPositionCalculator.hasNewHeader(position, reverseLayout)) {
+                    mHeaderProvider.getHeader(mRecyclerView, position);
+                }
+            }
+            mCount = 0;
+        }
+
+        /**
+         * @return the time the next frame is due, estimated as GapWorker does from the drawing time
+         * of the last one and the refresh rate of the display
+         */
+        private long getNextFrameNs() {
+            long frameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+            Display display = mRecyclerView.getDisplay();
+            if (display != null && display.getRefreshRate() >= 30) {
+                frameIntervalNs = (long) (1000000000 / display.getRefreshRate());
+            }
+            return TimeUnit.MILLISECONDS.toNanos(mRecyclerView.getDrawingTime()) + frameIntervalNs;
+        }
+    }
 }
@@ -1,10 +1,9 @@
 package com.timehop.stickyheadersrecyclerview;
 
-import android.graphics.Rect;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewGroup;
+import android.view.ViewConfiguration;
 
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -12,16 +11,84 @@ public class StickyRecyclerHeadersTouchListener implements RecyclerView.OnItemTo
     private final GestureDetector mTapDetector;
     private final RecyclerView mRecyclerView;
     private final StickyRecyclerHeadersDecoration mDecor;
+    private final int mTouchSlop;
+    private final HeaderGestureRouter mGestureRouter;
+    private boolean mGestureRoutingEnabled;
+
+    /**
+     * The header touched by the gesture in progress, when taps are dispatched immediately.
+     */
+    private boolean mImmediateTapsEnabled;
+    private int mTapPosition = -1;
+    private View mTapHeader;
+    private View mPressedView;
+    private float mDownX;
+    private float mDownY;
+
+    /**
+     * Presses the touched view once the tap timeout passes without the finger moving, like a view
+     * inside a scrolling container, so that the start of a scroll does not flash it.
+     */
+    private final Runnable mPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            setTapPressed(true);
+        }
+    };
+
+    private final Runnable mUnpressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            cancelTap();
+        }
+    };
 
     public StickyRecyclerHeadersTouchListener(final RecyclerView recyclerView,
                                               final StickyRecyclerHeadersDecoration decor) {
         mTapDetector = new GestureDetector(recyclerView.getContext(), new SingleTapDetector());
         mRecyclerView = recyclerView;
         mDecor = decor;
+        mTouchSlop = ViewConfiguration.get(recyclerView.getContext()).getScaledTouchSlop();
+        mGestureRouter = new HeaderGestureRouter(recyclerView, decor);
+    }
+
+    /**
+     * Dispatches header clicks as soon as the finger goes up, like list items, instead of waiting for
+     * the double-tap timeout to expire. The touched view of the header shows its pressed state once the
+     * finger stays down for the tap timeout, and the tap is cancelled once the finger moves past the
+     * touch slop.
+     *
+     * @param enabled true to dispatch taps on {@code ACTION_UP}, without double-tap detection
+     */
+    public void setImmediateTapsEnabled(boolean enabled) {
+        mImmediateTapsEnabled = enabled;
+        cancelTap();
+    }
+
+    /**
+     * Routes the whole gesture to the clickable view under the finger when it goes down on a header,
+     * instead of sending it a synthetic click. The view is then pressed, clicked and long-clicked like
+     * a view of the list, and its ripple animates over the header while only the region of the header
+     * is redrawn. A drag starting on a header still scrolls the list, and a tap on a header never
+     * clicks the item under it. Takes precedence over {@link #setImmediateTapsEnabled(boolean)}.
+     *
+     * @param enabled true to route gestures to the views of headers
+     */
+    public void setGestureRoutingEnabled(boolean enabled) {
+        mGestureRoutingEnabled = enabled;
+        if (!enabled) {
+            mGestureRouter.release();
+        }
     }
 
     @Override
     public boolean onInterceptTouchEvent(RecyclerView view, MotionEvent e) {
+        if (mGestureRoutingEnabled) {
+            return mGestureRouter.onInterceptTouchEvent(e);
+        }
+        if (mImmediateTapsEnabled) {
+            return onInterceptTap(e);
+        }
         boolean tapDetectorResponse = this.mTapDetector.onTouchEvent(e);
         if (tapDetectorResponse) {
             // Don't return false if a single tap is detected
@@ -34,53 +101,118 @@ public class StickyRecyclerHeadersTouchListener implements RecyclerView.OnItemTo
         return false;
     }
 
+    /**
+     * Tracks a tap without intercepting the gesture, so that a drag starting on a header still scrolls
+     * the list. Only the final {@code ACTION_UP} of a tap is intercepted, which keeps the item under the
+     * header from being clicked too.
+     */
+    private boolean onInterceptTap(MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                cancelTap();
+                startTap(e);
+                return false;
+            case MotionEvent.ACTION_MOVE:
+                if (mTapPosition != -1 && (Math.abs(e.getX() - mDownX) > mTouchSlop
+                        || Math.abs(e.getY() - mDownY) > mTouchSlop)) {
+                    cancelTap();
+                }
+                return false;
+            case MotionEvent.ACTION_UP:
+                if (mTapPosition == -1) {
+                    return false;
+                }
+                View target = mPressedView;
+                int position = mTapPosition;
+                if (target != null && !target.isPressed()) {
+                    // up before the tap timeout: show the press briefly, as a view does
+                    mRecyclerView.removeCallbacks(mPressRunnable);
+                    setTapPressed(true);
+                    mTapPosition = -1;
+                    mRecyclerView.postDelayed(mUnpressRunnable, ViewConfiguration.getPressedStateDuration());
+                } else {
+                    cancelTap();
+                }
+                performClick(target, position);
+                return true;
+            default:
+                // a second pointer or a cancel ends the tap
+                cancelTap();
+                return false;
+        }
+    }
+
+    private void startTap(MotionEvent e) {
+        int x = (int) e.getX();
+        int y = (int) e.getY();
+        int position = mDecor.findHeaderPositionUnder(x, y);
+        if (position == -1) {
+            return;
+        }
+        mTapPosition = position;
+        mDownX = e.getX();
+        mDownY = e.getY();
+        mTapHeader = mDecor.getHeaderView(mRecyclerView, position);
+        mPressedView = mDecor.findHeaderClickTarget(position, x, y);
+        if (mPressedView != null) {
+            mRecyclerView.postDelayed(mPressRunnable, ViewConfiguration.getTapTimeout());
+        }
+    }
+
+    private void cancelTap() {
+        mRecyclerView.removeCallbacks(mPressRunnable);
+        mRecyclerView.removeCallbacks(mUnpressRunnable);
+        setTapPressed(false);
+        mTapPosition = -1;
+        mTapHeader = null;
+        mPressedView = null;
+    }
+
+    private void setTapPressed(boolean pressed) {
+        if (mPressedView != null && mPressedView.isPressed() != pressed) {
+            mPressedView.setPressed(pressed);
+            mDecor.invalidateHeaderView(mTapHeader);
+        }
+    }
+
+    /**
+     * Clicks the one view the tap is meant for, found among the click targets collected when the
+     * header was bound, instead of dispatching the event to its whole view tree.
+     */
+    private void performClick(View target, int position) {
+        if (target != null) {
+            target.setTag(position);
+            target.performClick();
+        }
+    }
+
     @Override
-    public void onTouchEvent(RecyclerView view, MotionEvent e) { /* do nothing? */ }
+    public void onTouchEvent(RecyclerView view, MotionEvent e) {
+        // only the final up event of a tap is intercepted, and it was handled then
+    }
 
     @Override
     public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
-        // do nothing
+        if (disallowIntercept) {
+            // a child took over the gesture, the up event will not be seen
+            cancelTap();
+            mGestureRouter.cancel();
+        }
     }
 
     private class SingleTapDetector extends GestureDetector.SimpleOnGestureListener {
         @Override
         public boolean onSingleTapUp(MotionEvent e) {
-            int position = mDecor.findHeaderPositionUnder((int) e.getX(), (int) e.getY());
+            int x = (int) e.getX();
+            int y = (int) e.getY();
+            int position = mDecor.findHeaderPositionUnder(x, y);
             if (position != -1) {
-                View headerView = mDecor.getHeaderView(mRecyclerView, position);
-                performClick(headerView, e, position);
+                performClick(mDecor.findHeaderClickTarget(position, x, y), position);
                 return true;
             }
             return false;
         }
 
-        private void performClick(View view, MotionEvent e, int position) {
-            if (view instanceof ViewGroup) {
-                ViewGroup viewGroup = (ViewGroup) view;
-                for (int i = 0; i < viewGroup.getChildCount(); i++) {
-                    View child = viewGroup.getChildAt(i);
-                    performClick(child, e, position);
-                }
-            }
-
-            containsBounds(view, e, position);
-        }
-
-        private View containsBounds(View view, MotionEvent e, int position) {
-            int x = (int) e.getX();
-            int y = (int) e.getY();
-            Rect rect = new Rect();
-            view.getHitRect(rect);
-            if (view.getVisibility() == View.VISIBLE
-                    && view.dispatchTouchEvent(e)
-                    && rect.left < rect.right && rect.top < rect.bottom && x >= rect.left && x < rect.right && y >= rect.top) {
-                view.setTag(position);
-                view.performClick();
-                return view;
-            }
-            return null;
-        }
-
         @Override
         public boolean onDoubleTap(MotionEvent e) {
             return true;
@@ -0,0 +1,100 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+
+/**
+ * The clickable views of a header flattened in drawing order, with their hit rects in the coordinates
+ * of the header. Built when the header is bound and laid out, so that a tap finds its target with a
+ * single scan instead of walking and dispatching to the whole view tree.
+ */
+public final class ClickTargets {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private View[] mViews = new View[INITIAL_CAPACITY];
+  private Rect[] mRects = newRects(INITIAL_CAPACITY);
+  private int mSize;
+
+  /**
+   * Collects the visible clickable views of a laid out view tree, the root included.
+   *
+   * @param root header view, laid out at (0, 0)
+   */
+  void build(View root) {
+    Arrays.fill(mViews, 0, mSize, null);
+    mSize = 0;
+    if (root.getVisibility() == View.VISIBLE) {
+      collect(root, 0, 0);
+    }
+  }
+
+  /**
+   * Finds the view a tap at the given point is meant for: the deepest clickable view under it, and
+   * the one drawn last among siblings.
+   *
+   * @param x x-coordinate, relative to the header
+   * @param y y-coordinate, relative to the header
+   * @return the target view, or null if no clickable view is under the point
+   */
+  public View findTarget(int x, int y) {
+    // views are collected parents first and in drawing order, so the last hit is the deepest
+    for (int i = mSize - 1; i >= 0; i--) {
+      if (mRects[i].contains(x, y)) {
+        return mViews[i];
+      }
+    }
+    return null;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @param view    a visible view of the tree
+   * @param originX left of the view's parent, in root coordinates, minus its horizontal scroll
+   * @param originY top of the view's parent, in root coordinates, minus its vertical scroll
+   */
+  private void collect(View view, int originX, int originY) {
+    if (view.isClickable()) {
+      Rect rect = obtain(view);
+      view.getHitRect(rect);
+      rect.offset(originX, originY);
+    }
+    if (view instanceof ViewGroup) {
+      ViewGroup viewGroup = (ViewGroup) view;
+      int childOriginX = originX + view.getLeft() - view.getScrollX();
+      int childOriginY = originY + view.getTop() - view.getScrollY();
+      for (int i = 0; i < viewGroup.getChildCount(); i++) {
+        View child = viewGroup.getChildAt(i);
+        if (child.getVisibility() == View.VISIBLE) {
+          collect(child, childOriginX, childOriginY);
+        }
+      }
+    }
+  }
+
+  private Rect obtain(View view) {
+    if (mSize == mViews.length) {
+      mViews = Arrays.copyOf(mViews, mSize * 2);
+      mRects = Arrays.copyOf(mRects, mSize * 2);
+      for (int i = mSize; i < mRects.length; i++) {
+        mRects[i] = new Rect();
+      }
+    }
+    mViews[mSize] = view;
+    return mRects[mSize++];
+  }
+
+  private static Rect[] newRects(int capacity) {
+    Rect[] rects = new Rect[capacity];
+    for (int i = 0; i < capacity; i++) {
+      rects[i] = new Rect();
+    }
+    return rects;
+  }
+}
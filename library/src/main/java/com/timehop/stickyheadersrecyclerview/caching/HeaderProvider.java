@@ -18,8 +18,60 @@ public interface HeaderProvider {
    */
   public View getHeader(RecyclerView recyclerView, int position);
 
+  /**
+   * @param position headed by the header
+   * @return the clickable views of the header cached for the position, or null if it is not cached
+   */
+  ClickTargets getHeaderClickTargets(int position);
+
   /**
    * TODO: describe this functionality and its necessity
    */
   void invalidate();
+
+  /**
+   * Bounds the cache of header views. The least recently used headers are dropped first, and
+   * headers drawn in the current or previous frame are kept even if that exceeds the bounds.
+   *
+   * @param maxCount maximum number of cached headers
+   * @param maxBytes maximum estimated size of the cached headers, in bytes
+   */
+  void setCacheLimits(int maxCount, long maxBytes);
+
+  /**
+   * @return the number of cached headers
+   */
+  int getCacheSize();
+
+  /**
+   * @return the estimated size of the cached headers, in bytes
+   */
+  long getCacheBytes();
+
+  /**
+   * Called at the start of every draw pass so that headers on screen are never evicted.
+   */
+  void beginFrame();
+
+  /**
+   * Releases memory according to a {@link android.content.ComponentCallbacks2} trim level: pooled
+   * headers first, then cached headers that are not on screen, then every cached headers once the UI is
+   * hidden. Released headers are created again when they are needed.
+   *
+   * @param level the trim level passed to {@code onTrimMemory}
+   */
+  void trimMemory(int level);
+
+  /**
+   * Binds the cached header of an id again with a payload and measures it, without inflating
+   * anything. Drops the cached header instead when no position is given, it is then bound from
+   * scratch when needed.
+   *
+   * @param recyclerView that displays the header
+   * @param headerId     id of the changed header
+   * @param position     a position headed by the header, or {@link RecyclerView#NO_POSITION}
+   * @param payload      passed to the adapter, may be null for a full bind
+   * @return true if the measured size of the header changed
+   */
+  boolean rebindHeader(RecyclerView recyclerView, long headerId, int position, Object payload);
 }
@@ -1,6 +1,6 @@
 package com.timehop.stickyheadersrecyclerview.caching;
 
-import android.util.LongSparseArray;
+import android.content.ComponentCallbacks2;
 import android.view.View;
 import android.view.ViewGroup;
 
@@ -10,60 +10,149 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * An implementation of {@link HeaderProvider} that creates and caches header views
  */
 public class HeaderViewCache implements HeaderProvider {
 
   private final StickyRecyclerHeadersAdapter mAdapter;
-  private final LongSparseArray<View> mHeaderViews = new LongSparseArray<>();
+  private final LruViewHolderCache mHeaderViews;
+  private final HeaderViewPool mPool;
   private final OrientationProvider mOrientationProvider;
 
   public HeaderViewCache(StickyRecyclerHeadersAdapter adapter,
       OrientationProvider orientationProvider) {
+    this(adapter, orientationProvider, new HeaderViewPool());
+  }
+
+  public HeaderViewCache(StickyRecyclerHeadersAdapter adapter,
+      OrientationProvider orientationProvider, HeaderViewPool pool) {
     mAdapter = adapter;
     mOrientationProvider = orientationProvider;
+    mPool = pool;
+    mHeaderViews = new LruViewHolderCache(new LruViewHolderCache.EvictionListener() {
+      @Override
+      public void onEvicted(RecyclerView.ViewHolder holder, int viewType) {
+        mPool.putRecycledView(viewType, holder);
+      }
+    });
   }
 
   @Override
   public View getHeader(RecyclerView parent, int position) {
     long headerId = mAdapter.getHeaderId(position);
 
-    View header = mHeaderViews.get(headerId);
-    if (header == null) {
-      //TODO - recycle views
-      RecyclerView.ViewHolder viewHolder = mAdapter.onCreateHeaderViewHolder(parent);
+    RecyclerView.ViewHolder viewHolder = mHeaderViews.get(headerId);
+    if (viewHolder == null) {
+      int viewType = mAdapter.getHeaderViewType(position);
+      viewHolder = mPool.getRecycledView(viewType);
+      if (viewHolder == null) {
+        viewHolder = mAdapter.onCreateHeaderViewHolder(parent, viewType);
+      }
       mAdapter.onBindHeaderViewHolder(viewHolder, position);
-      header = viewHolder.itemView;
+      View header = viewHolder.itemView;
       if (header.getLayoutParams() == null) {
         header.setLayoutParams(new ViewGroup.LayoutParams(
             ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
       }
-
-      int widthSpec;
-      int heightSpec;
-
-      if (mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL) {
-        widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-        heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
-      } else {
-        widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.UNSPECIFIED);
-        heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.EXACTLY);
-      }
-
-      int childWidth = ViewGroup.getChildMeasureSpec(widthSpec,
-          parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
-      int childHeight = ViewGroup.getChildMeasureSpec(heightSpec,
-          parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+      mHeaderViews.put(headerId, viewHolder, viewType);
+    }
+    View header = viewHolder.itemView;
+    int childWidth = getChildWidthSpec(parent, header);
+    int childHeight = getChildHeightSpec(parent, header);
+    if (!mHeaderViews.isMeasuredWith(headerId, childWidth, childHeight)) {
+      // newly bound, or the parent was resized, padded or reoriented since the last measure:
+      // measure again in place, without rebinding
       header.measure(childWidth, childHeight);
       header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
-      mHeaderViews.put(headerId, header);
+      mHeaderViews.setMeasureSpecs(headerId, childWidth, childHeight);
     }
     return header;
   }
 
+  @Override
+  public ClickTargets getHeaderClickTargets(int position) {
+    return mHeaderViews.getClickTargets(mAdapter.getHeaderId(position));
+  }
+
+  private int getChildWidthSpec(RecyclerView parent, View header) {
+    int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+        ? View.MeasureSpec.EXACTLY : View.MeasureSpec.UNSPECIFIED;
+    int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), mode);
+    return ViewGroup.getChildMeasureSpec(widthSpec,
+        parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
+  }
+
+  private int getChildHeightSpec(RecyclerView parent, View header) {
+    int mode = mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL
+        ? View.MeasureSpec.UNSPECIFIED : View.MeasureSpec.EXACTLY;
+    int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), mode);
+    return ViewGroup.getChildMeasureSpec(heightSpec,
+        parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+  }
+
+  @Override
+  public boolean rebindHeader(RecyclerView parent, long headerId, int position, Object payload) {
+    if (position == RecyclerView.NO_POSITION) {
+      mHeaderViews.remove(headerId);
+      return false;
+    }
+    RecyclerView.ViewHolder viewHolder = mHeaderViews.get(headerId);
+    if (viewHolder == null) {
+      return false;
+    }
+    View header = viewHolder.itemView;
+    int width = header.getMeasuredWidth();
+    int height = header.getMeasuredHeight();
+    List<Object> payloads = payload == null
+        ? Collections.emptyList() : Collections.singletonList(payload);
+    mAdapter.onBindHeaderViewHolder(viewHolder, position, payloads);
+    int childWidth = getChildWidthSpec(parent, header);
+    int childHeight = getChildHeightSpec(parent, header);
+    header.measure(childWidth, childHeight);
+    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    mHeaderViews.setMeasureSpecs(headerId, childWidth, childHeight);
+    return header.getMeasuredWidth() != width || header.getMeasuredHeight() != height;
+  }
+
   @Override
   public void invalidate() {
     mHeaderViews.clear();
   }
+
+  @Override
+  public void setCacheLimits(int maxCount, long maxBytes) {
+    mHeaderViews.setLimits(maxCount, maxBytes);
+  }
+
+  @Override
+  public int getCacheSize() {
+    return mHeaderViews.size();
+  }
+
+  @Override
+  public long getCacheBytes() {
+    return mHeaderViews.getEstimatedBytes();
+  }
+
+  @Override
+  public void beginFrame() {
+    mHeaderViews.beginFrame();
+  }
+
+  @Override
+  public void trimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      mHeaderViews.clear();
+      mPool.clear();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      mHeaderViews.trimToVisible();
+      mPool.clear();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+      mPool.clear();
+    }
+  }
 }
@@ -0,0 +1,209 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import android.util.LongSparseArray;
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Keeps header or footer view holders by id, bounded by a number of entries and an estimated number
+ * of bytes. When a bound is exceeded the least recently used holders are evicted first, but holders
+ * used during the current or the previous frame are on screen and are never evicted.
+ */
+class LruViewHolderCache {
+
+  /**
+   * Receives the holders dropped from the cache, by eviction or by {@link #clear()}.
+   */
+  interface EvictionListener {
+
+    void onEvicted(RecyclerView.ViewHolder holder, int viewType);
+  }
+
+  /**
+   * The footprint of a holder is estimated as the pixel area of its measured view, drawn as ARGB.
+   */
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private final LongSparseArray<Entry> mEntries = new LongSparseArray<>();
+  private final EvictionListener mEvictionListener;
+  private int mMaxCount = Integer.MAX_VALUE;
+  private long mMaxBytes = Long.MAX_VALUE;
+  private long mBytes;
+  private long mAccessCount;
+  private int mFrame;
+
+  LruViewHolderCache(EvictionListener evictionListener) {
+    mEvictionListener = evictionListener;
+  }
+
+  public RecyclerView.ViewHolder get(long id) {
+    Entry entry = mEntries.get(id);
+    if (entry == null) {
+      return null;
+    }
+    entry.mLastAccess = ++mAccessCount;
+    entry.mLastFrame = mFrame;
+    return entry.mHolder;
+  }
+
+  public void put(long id, RecyclerView.ViewHolder holder, int viewType) {
+    Entry entry = mEntries.get(id);
+    if (entry == null) {
+      entry = new Entry();
+      mEntries.put(id, entry);
+    } else {
+      mBytes -= entry.mBytes;
+      if (entry.mHolder != holder) {
+        mEvictionListener.onEvicted(entry.mHolder, entry.mViewType);
+      }
+    }
+    entry.mHolder = holder;
+    entry.mViewType = viewType;
+    entry.mMeasured = false;
+    entry.mBytes = estimateBytes(holder.itemView);
+    entry.mLastAccess = ++mAccessCount;
+    entry.mLastFrame = mFrame;
+    mBytes += entry.mBytes;
+    trim();
+  }
+
+  /**
+   * @return true if the holder cached for the id was last measured with the given specs
+   */
+  public boolean isMeasuredWith(long id, int widthSpec, int heightSpec) {
+    Entry entry = mEntries.get(id);
+    return entry != null && entry.mMeasured
+        && entry.mWidthSpec == widthSpec && entry.mHeightSpec == heightSpec;
+  }
+
+  /**
+   * Records the specs the holder cached for the id was just measured with, updates its estimated
+   * footprint and collects its click targets, now that it is bound and laid out.
+   */
+  public void setMeasureSpecs(long id, int widthSpec, int heightSpec) {
+    Entry entry = mEntries.get(id);
+    if (entry == null) {
+      return;
+    }
+    entry.mWidthSpec = widthSpec;
+    entry.mHeightSpec = heightSpec;
+    entry.mMeasured = true;
+    entry.mClickTargets.build(entry.mHolder.itemView);
+    mBytes -= entry.mBytes;
+    entry.mBytes = estimateBytes(entry.mHolder.itemView);
+    mBytes += entry.mBytes;
+    trim();
+  }
+
+  /**
+   * Unlike {@link #get(long)}, does not count as a use of the holder.
+   *
+   * @return the click targets of the holder cached for the id, as of its last measure, or null if
+   * it is not cached or was not measured since it was bound
+   */
+  public ClickTargets getClickTargets(long id) {
+    Entry entry = mEntries.get(id);
+    return entry != null && entry.mMeasured ? entry.mClickTargets : null;
+  }
+
+  /**
+   * @param maxCount maximum number of holders to keep
+   * @param maxBytes maximum estimated number of bytes to keep
+   */
+  public void setLimits(int maxCount, long maxBytes) {
+    mMaxCount = maxCount;
+    mMaxBytes = maxBytes;
+    trim();
+  }
+
+  /**
+   * Marks the start of a new frame. Holders not used since the previous frame become evictable.
+   */
+  public void beginFrame() {
+    mFrame++;
+  }
+
+  /**
+   * Evicts every holder that was not used during the current or the previous frame.
+   */
+  public void trimToVisible() {
+    for (int i = mEntries.size() - 1; i >= 0; i--) {
+      Entry entry = mEntries.valueAt(i);
+      if (entry.mLastFrame < mFrame - 1) {
+        mBytes -= entry.mBytes;
+        mEntries.removeAt(i);
+        mEvictionListener.onEvicted(entry.mHolder, entry.mViewType);
+      }
+    }
+  }
+
+  /**
+   * Evicts the holder cached for the id, if any.
+   */
+  public void remove(long id) {
+    int index = mEntries.indexOfKey(id);
+    if (index < 0) {
+      return;
+    }
+    Entry entry = mEntries.valueAt(index);
+    mBytes -= entry.mBytes;
+    mEntries.removeAt(index);
+    mEvictionListener.onEvicted(entry.mHolder, entry.mViewType);
+  }
+
+  public int size() {
+    return mEntries.size();
+  }
+
+  public long getEstimatedBytes() {
+    return mBytes;
+  }
+
+  public void clear() {
+    for (int i = 0; i < mEntries.size(); i++) {
+      Entry entry = mEntries.valueAt(i);
+      mEvictionListener.onEvicted(entry.mHolder, entry.mViewType);
+    }
+    mEntries.clear();
+    mBytes = 0;
+  }
+
+  private void trim() {
+    while (mEntries.size() > mMaxCount || mBytes > mMaxBytes) {
+      int eldest = -1;
+      long eldestAccess = Long.MAX_VALUE;
+      for (int i = 0; i < mEntries.size(); i++) {
+        Entry entry = mEntries.valueAt(i);
+        if (entry.mLastFrame < mFrame - 1 && entry.mLastAccess < eldestAccess) {
+          eldest = i;
+          eldestAccess = entry.mLastAccess;
+        }
+      }
+      if (eldest < 0) {
+        // everything left is on screen
+        return;
+      }
+      Entry entry = mEntries.valueAt(eldest);
+      mBytes -= entry.mBytes;
+      mEntries.removeAt(eldest);
+      mEvictionListener.onEvicted(entry.mHolder, entry.mViewType);
+    }
+  }
+
+  private static long estimateBytes(View view) {
+    return (long) view.getMeasuredWidth() * view.getMeasuredHeight() * BYTES_PER_PIXEL;
+  }
+
+  private static final class Entry {
+    RecyclerView.ViewHolder mHolder;
+    int mViewType;
+    long mBytes;
+    long mLastAccess;
+    int mLastFrame;
+    int mWidthSpec;
+    int mHeightSpec;
+    boolean mMeasured;
+    final ClickTargets mClickTargets = new ClickTargets();
+  }
+}
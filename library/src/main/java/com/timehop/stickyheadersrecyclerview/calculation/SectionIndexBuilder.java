@@ -0,0 +1,225 @@
+package com.timehop.stickyheadersrecyclerview.calculation;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a {@link SectionIndex} away from the main thread. The header ids are swept on a background
+ * {@link Executor}, split in chunks across the common {@link ForkJoinPool}, and the finished index is
+ * delivered on the main thread. The background threads never touch an index once it is delivered.
+ */
+public class SectionIndexBuilder {
+
+  /**
+   * Provides header ids to the builder. Unlike the adapter, it is called from background threads
+   * and must be safe to use concurrently.
+   */
+  public interface HeaderIdSupplier {
+
+    /**
+     * @param position adapter position
+     * @return the header id of the position, see
+     * {@link com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter#getHeaderId(int)}
+     */
+    long getHeaderId(int position);
+
+    /**
+     * Fills {@code out} with the header ids of the positions in [from, to). Suppliers that read a
+     * range more cheaply than one position at a time should override it.
+     *
+     * @param from first position, inclusive
+     * @param to   last position, exclusive
+     * @param out  array of at least {@code to - from} elements receiving the ids
+     */
+    default void getHeaderIds(int from, int to, long[] out) {
+      for (int position = from; position < to; position++) {
+        out[position - from] = getHeaderId(position);
+      }
+    }
+  }
+
+  /**
+   * Receives the index once it is built, on the main thread.
+   */
+  public interface Callback {
+
+    void onSectionIndexBuilt(SectionIndex sectionIndex);
+  }
+
+  /**
+   * Ranges smaller than this are swept by a single task.
+   */
+  private static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+  /**
+   * Number of header ids requested from the supplier at once.
+   */
+  private static final int ID_WINDOW = 256;
+
+  private final HeaderIdSupplier mSupplier;
+  private final Executor mExecutor;
+  private final Executor mMainExecutor;
+
+  /**
+   * Incremented on the main thread for every build and cancellation; only the latest build is
+   * delivered.
+   */
+  private int mGeneration;
+
+  public SectionIndexBuilder(HeaderIdSupplier supplier, Executor executor) {
+    this(supplier, executor, new Executor() {
+      private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+      @Override
+      public void execute(Runnable command) {
+        mMainHandler.post(command);
+      }
+    });
+  }
+
+  /**
+   * @param mainExecutor delivers the built index, posting to the main thread outside of tests
+   */
+  SectionIndexBuilder(HeaderIdSupplier supplier, Executor executor, Executor mainExecutor) {
+    mSupplier = supplier;
+    mExecutor = executor;
+    mMainExecutor = mainExecutor;
+  }
+
+  /**
+   * Starts building an index for {@code itemCount} positions. Any build still running is superseded.
+   * Must be called on the main thread.
+   *
+   * @param itemCount number of positions to index
+   * @param callback  to receive the index on the main thread
+   */
+  public void build(final int itemCount, final Callback callback) {
+    final int generation = ++mGeneration;
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final SectionIndex sectionIndex = sweep(itemCount);
+        mMainExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == mGeneration) {
+              callback.onSectionIndexBuilt(sectionIndex);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Drops the result of the build in progress, if any. Must be called on the main thread.
+   */
+  public void cancel() {
+    mGeneration++;
+  }
+
+  private SectionIndex sweep(int itemCount) {
+    Boundaries boundaries;
+    if (itemCount > MIN_CHUNK_SIZE) {
+      boundaries = ForkJoinPool.commonPool().invoke(new ParallelSweep(mSupplier, 0, itemCount));
+    } else {
+      boundaries = Boundaries.sweep(mSupplier, 0, itemCount);
+    }
+    return new SectionIndex(boundaries.mStarts, boundaries.mIds, boundaries.mCount, itemCount);
+  }
+
+  /**
+   * Section starts found in a range of positions. The first position of a non-empty range is always
+   * recorded; {@link #stitch} drops it when the previous range ends with the same id.
+   */
+  private static final class Boundaries {
+
+    final int[] mStarts;
+    final long[] mIds;
+    final int mCount;
+    final long mLastId;
+
+    Boundaries(int[] starts, long[] ids, int count, long lastId) {
+      mStarts = starts;
+      mIds = ids;
+      mCount = count;
+      mLastId = lastId;
+    }
+
+    static Boundaries sweep(HeaderIdSupplier supplier, int from, int to) {
+      int[] starts = new int[16];
+      long[] ids = new long[16];
+      int count = 0;
+      long previousId = 0;
+      long[] buffer = new long[ID_WINDOW];
+      for (int windowStart = from; windowStart < to; windowStart += ID_WINDOW) {
+        int windowEnd = Math.min(windowStart + ID_WINDOW, to);
+        supplier.getHeaderIds(windowStart, windowEnd, buffer);
+        for (int position = windowStart; position < windowEnd; position++) {
+          long headerId = buffer[position - windowStart];
+          if (position == from || headerId != previousId) {
+            if (count == starts.length) {
+              starts = Arrays.copyOf(starts, count * 2);
+              ids = Arrays.copyOf(ids, count * 2);
+            }
+            starts[count] = position;
+            ids[count] = headerId;
+            count++;
+          }
+          previousId = headerId;
+        }
+      }
+      return new Boundaries(starts, ids, count, previousId);
+    }
+
+    static Boundaries stitch(Boundaries left, Boundaries right) {
+      if (left.mCount == 0) {
+        return right;
+      }
+      if (right.mCount == 0) {
+        return left;
+      }
+      int skip = right.mIds[0] == left.mLastId ? 1 : 0;
+      int count = left.mCount + right.mCount - skip;
+      int[] starts = Arrays.copyOf(left.mStarts, count);
+      long[] ids = Arrays.copyOf(left.mIds, count);
+      System.arraycopy(right.mStarts, skip, starts, left.mCount, right.mCount - skip);
+      System.arraycopy(right.mIds, skip, ids, left.mCount, right.mCount - skip);
+      return new Boundaries(starts, ids, count, right.mLastId);
+    }
+  }
+
+  /**
+   * Splits the sweep in halves until they are small enough, then stitches the halves back together.
+   */
+  private static final class ParallelSweep extends RecursiveTask<Boundaries> {
+
+    private final HeaderIdSupplier mSupplier;
+    private final int mFrom;
+    private final int mTo;
+
+    ParallelSweep(HeaderIdSupplier supplier, int from, int to) {
+      mSupplier = supplier;
+      mFrom = from;
+      mTo = to;
+    }
+
+    @Override
+    protected Boundaries compute() {
+      if (mTo - mFrom <= MIN_CHUNK_SIZE) {
+        return Boundaries.sweep(mSupplier, mFrom, mTo);
+      }
+      int middle = (mFrom + mTo) >>> 1;
+      ParallelSweep left = new ParallelSweep(mSupplier, mFrom, middle);
+      ParallelSweep right = new ParallelSweep(mSupplier, middle, mTo);
+      left.fork();
+      Boundaries rightBoundaries = right.compute();
+      return Boundaries.stitch(left.join(), rightBoundaries);
+    }
+  }
+}
@@ -2,14 +2,21 @@ package com.timehop.stickyheadersrecyclerview.rendering;
 
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
 import android.view.View;
 import android.widget.LinearLayout;
 
+import androidx.annotation.RequiresApi;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 /**
  * Responsible for drawing headers to the canvas provided by the item decoration
  */
@@ -24,6 +31,14 @@ public class HeaderRenderer {
    */
   private final Rect mTempRect = new Rect();
 
+  /**
+   * Display lists of the headers on API 29+, recorded once and replayed with a new position every
+   * frame, see {@link #setRenderNodeCachingEnabled(boolean)}. Keyed weakly so that dropped header
+   * views release theirs.
+   */
+  private final WeakHashMap<View, RecordedHeader> mRecordedHeaders = new WeakHashMap<>();
+  private boolean mRenderNodeCachingEnabled;
+
   public HeaderRenderer(OrientationProvider orientationProvider) {
     this(orientationProvider, new DimensionCalculator());
   }
@@ -44,6 +59,22 @@ public class HeaderRenderer {
    *                     the {@link Rect#left} and {@link Rect#top} properties, respectively.
    */
   public void drawHeader(RecyclerView recyclerView, Canvas canvas, View header, Rect offset) {
+    drawHeader(recyclerView, canvas, header, offset, RecyclerView.NO_ID);
+  }
+
+  /**
+   * Draws a header to a canvas, offsetting by some x and y amount. With render node caching enabled,
+   * on API 29+ hardware canvases the header is recorded into a {@link RenderNode} that is only
+   * recorded again when the header is bound to another id, changes size or is invalidated; otherwise
+   * only its position is updated.
+   *
+   * @param recyclerView the parent recycler view for drawing the header into
+   * @param canvas       the canvas on which to draw the header
+   * @param header       the view to draw as the header
+   * @param offset       a Rect used to define the x/y offset of the header
+   * @param headerId     the id the header is bound to
+   */
+  public void drawHeader(RecyclerView recyclerView, Canvas canvas, View header, Rect offset, long headerId) {
     canvas.save();
 
     if (recyclerView.getLayoutManager().getClipToPadding()) {
@@ -52,12 +83,92 @@ public class HeaderRenderer {
       canvas.clipRect(mTempRect);
     }
 
-    canvas.translate(offset.left, offset.top);
-
-    header.draw(canvas);
+    if (mRenderNodeCachingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+        && canvas.isHardwareAccelerated()
+        && header.getWidth() > 0 && header.getHeight() > 0) {
+      RenderNode renderNode = getRenderNode(header, headerId);
+      renderNode.setPosition(offset.left, offset.top,
+          offset.left + header.getWidth(), offset.top + header.getHeight());
+      canvas.drawRenderNode(renderNode);
+    } else {
+      canvas.translate(offset.left, offset.top);
+      header.draw(canvas);
+    }
     canvas.restore();
   }
 
+  /**
+   * Enables drawing headers from display lists recorded once per bind and size on API 29+, instead
+   * of drawing their views every frame. Disabling releases the display lists.
+   */
+  public void setRenderNodeCachingEnabled(boolean enabled) {
+    mRenderNodeCachingEnabled = enabled;
+    if (!enabled) {
+      clear();
+    }
+  }
+
+  /**
+   * Marks the recorded display list of a header as stale, it is recorded again the next time it is
+   * drawn.
+   *
+   * @param header whose content changed
+   */
+  public void invalidateHeader(View header) {
+    RecordedHeader recordedHeader = mRecordedHeaders.get(header);
+    if (recordedHeader != null) {
+      recordedHeader.mValid = false;
+    }
+  }
+
+  /**
+   * Marks every recorded display list as stale.
+   */
+  public void invalidateHeaders() {
+    for (Map.Entry<View, RecordedHeader> entry : mRecordedHeaders.entrySet()) {
+      entry.getValue().mValid = false;
+    }
+  }
+
+  /**
+   * Releases every recorded display list.
+   */
+  public void clear() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      for (Map.Entry<View, RecordedHeader> entry : mRecordedHeaders.entrySet()) {
+        entry.getValue().mRenderNode.discardDisplayList();
+      }
+    }
+    mRecordedHeaders.clear();
+  }
+
+  @RequiresApi(Build.VERSION_CODES.Q)
+  private RenderNode getRenderNode(View header, long headerId) {
+    int width = header.getWidth();
+    int height = header.getHeight();
+    RecordedHeader recordedHeader = mRecordedHeaders.get(header);
+    if (recordedHeader == null) {
+      recordedHeader = new RecordedHeader(new RenderNode("StickyHeader"));
+      mRecordedHeaders.put(header, recordedHeader);
+    }
+    RenderNode renderNode = recordedHeader.mRenderNode;
+    if (!recordedHeader.mValid || recordedHeader.mHeaderId != headerId
+        || recordedHeader.mWidth != width || recordedHeader.mHeight != height
+        || !renderNode.hasDisplayList()) {
+      RecordingCanvas recordingCanvas = renderNode.beginRecording(width, height);
+      try {
+        header.draw(recordingCanvas);
+      } finally {
+        renderNode.endRecording();
+      }
+      recordedHeader.mHeaderId = headerId;
+      recordedHeader.mWidth = width;
+      recordedHeader.mHeight = height;
+      recordedHeader.mValid = true;
+    }
+    return renderNode;
+  }
+
   /**
    * Initializes a clipping rect for the header based on the margins of the header and the padding of the
    * recycler.
@@ -86,4 +197,19 @@ public class HeaderRenderer {
     }
   }
 
+  /**
+   * A header recorded into a {@link RenderNode}, with what it was recorded for. Only created on
+   * API 29+.
+   */
+  private static final class RecordedHeader {
+    final RenderNode mRenderNode;
+    long mHeaderId;
+    int mWidth;
+    int mHeight;
+    boolean mValid;
+
+    RecordedHeader(RenderNode renderNode) {
+      mRenderNode = renderNode;
+    }
+  }
 }
@@ -0,0 +1,155 @@
+package com.timehop.stickyheadersrecyclerview.calculation;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SectionIndexBuilderTest {
+
+  private final QueueExecutor mBackground = new QueueExecutor();
+  private final QueueExecutor mMain = new QueueExecutor();
+  private final List<SectionIndex> mDelivered = new ArrayList<>();
+  private final SectionIndexBuilder.Callback mCallback = new SectionIndexBuilder.Callback() {
+    @Override
+    public void onSectionIndexBuilt(SectionIndex sectionIndex) {
+      mDelivered.add(sectionIndex);
+    }
+  };
+
+  @Test
+  public void build_deliversOnTheMainExecutor() {
+    SectionIndexBuilder builder = new SectionIndexBuilder(new Supplier(10), mBackground, mMain);
+
+    builder.build(100, mCallback);
+    mBackground.runAll();
+    assertTrue(mDelivered.isEmpty());
+    mMain.runAll();
+
+    assertEquals(1, mDelivered.size());
+    assertSameSections(new Supplier(10), 100, mDelivered.get(0));
+  }
+
+  @Test
+  public void build_supersededBuildsAreCoalescedIntoTheLatest() {
+    SectionIndexBuilder builder = new SectionIndexBuilder(new Supplier(10), mBackground, mMain);
+
+    builder.build(50, mCallback);
+    builder.build(80, mCallback);
+    builder.build(100, mCallback);
+    mBackground.runAll();
+    mMain.runAll();
+
+    assertEquals(1, mDelivered.size());
+    assertEquals(100, mDelivered.get(0).getItemCount());
+  }
+
+  @Test
+  public void build_resultFinishedBeforeANewBuildIsDiscarded() {
+    SectionIndexBuilder builder = new SectionIndexBuilder(new Supplier(10), mBackground, mMain);
+
+    builder.build(50, mCallback);
+    mBackground.runAll();
+    // the first sweep is done and waits for the main thread when the data changes again
+    builder.build(100, mCallback);
+    mMain.runAll();
+    assertTrue(mDelivered.isEmpty());
+    mBackground.runAll();
+    mMain.runAll();
+
+    assertEquals(1, mDelivered.size());
+    assertEquals(100, mDelivered.get(0).getItemCount());
+  }
+
+  @Test
+  public void cancel_discardsTheBuildInProgress() {
+    SectionIndexBuilder builder = new SectionIndexBuilder(new Supplier(10), mBackground, mMain);
+
+    builder.build(100, mCallback);
+    builder.cancel();
+    mBackground.runAll();
+    mMain.runAll();
+
+    assertTrue(mDelivered.isEmpty());
+  }
+
+  @Test
+  public void build_parallelSweepStitchesChunkBoundaries() {
+    // sections straddle the chunk boundaries of the parallel sweep
+    Supplier supplier = new Supplier(7919);
+    SectionIndexBuilder builder = new SectionIndexBuilder(supplier, mBackground, mMain);
+
+    builder.build(100000, mCallback);
+    mBackground.runAll();
+    mMain.runAll();
+
+    assertEquals(1, mDelivered.size());
+    assertSameSections(supplier, 100000, mDelivered.get(0));
+  }
+
+  @Test
+  public void build_emptyAdapter() {
+    SectionIndexBuilder builder = new SectionIndexBuilder(new Supplier(10), mBackground, mMain);
+
+    builder.build(0, mCallback);
+    mBackground.runAll();
+    mMain.runAll();
+
+    assertEquals(1, mDelivered.size());
+    assertEquals(0, mDelivered.get(0).getSectionCount());
+  }
+
+  private static void assertSameSections(Supplier supplier, int itemCount, SectionIndex index) {
+    assertEquals(itemCount, index.getItemCount());
+    int expectedCount = (itemCount + supplier.mSectionSize - 1) / supplier.mSectionSize;
+    assertEquals(expectedCount, index.getSectionCount());
+    for (int section = 0; section < expectedCount; section++) {
+      assertEquals(section * supplier.mSectionSize, index.getSectionStart(section));
+      assertEquals(section, index.getSectionId(section));
+    }
+  }
+
+  /**
+   * Header ids grouping positions in sections of a fixed size.
+   */
+  private static class Supplier implements SectionIndexBuilder.HeaderIdSupplier {
+
+    final int mSectionSize;
+
+    Supplier(int sectionSize) {
+      mSectionSize = sectionSize;
+    }
+
+    @Override
+    public long getHeaderId(int position) {
+      return position / mSectionSize;
+    }
+  }
+
+  /**
+   * Runs the queued tasks when asked, so that tests decide when the background and the main
+   * thread make progress.
+   */
+  private static class QueueExecutor implements Executor {
+
+    final Queue<Runnable> mTasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable command) {
+      mTasks.add(command);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = mTasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package com.timehop.stickyheadersrecyclerview.calculation;
+
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SectionIndexTest {
+
+  @Test
+  public void build_findsSectionBoundaries() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 1, 2, 2, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    assertEquals(3, index.getSectionCount());
+    assertEquals(0, index.getSectionStart(0));
+    assertEquals(2, index.getSectionEnd(0));
+    assertEquals(3, index.getSectionStart(1));
+    assertEquals(5, index.getSectionStart(2));
+    assertEquals(5, index.getSectionEnd(2));
+    assertEquals(2L, index.getSectionId(1));
+    assertEquals(1, index.getSectionForPosition(4));
+    assertEquals(-1, index.getSectionForPosition(6));
+    assertEquals(-1L, index.getHeaderId(-1));
+    assertTrue(index.isSectionStart(3));
+    assertTrue(index.isSectionEnd(2));
+    assertFalse(index.isSectionEnd(3));
+    assertFalse(index.isDirty());
+  }
+
+  @Test
+  public void onItemRangeInserted_shiftsLaterBoundariesBeforeRefresh() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.insert(1, 1, 1);
+    index.onItemRangeInserted(1, 2);
+
+    assertTrue(index.isDirty());
+    assertEquals(7, index.getItemCount());
+    assertEquals(4, index.getSectionStart(1));
+    assertEquals(6, index.getSectionStart(2));
+    index.refresh(adapter);
+    assertFalse(index.isDirty());
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeInserted_splitsSection() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 1, 1);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.insert(2, 7);
+    index.onItemRangeInserted(2, 1);
+    index.refresh(adapter);
+
+    assertEquals(3, index.getSectionCount());
+    assertEquals(2, index.getSectionStart(1));
+    assertEquals(7L, index.getSectionId(1));
+    assertEquals(3, index.getSectionStart(2));
+    assertEquals(1L, index.getSectionId(2));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeInserted_atSectionStartMergesWithSameId() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.insert(2, 2, 2);
+    index.onItemRangeInserted(2, 2);
+    index.refresh(adapter);
+
+    assertEquals(2, index.getSectionCount());
+    assertEquals(2, index.getSectionStart(1));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeRemoved_dropsWholeSection() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2, 3, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.remove(2, 2);
+    index.onItemRangeRemoved(2, 2);
+
+    assertEquals(4, index.getItemCount());
+    assertEquals(2, index.getSectionCount());
+    assertEquals(2, index.getSectionStart(1));
+    assertEquals(3L, index.getSectionId(1));
+    index.refresh(adapter);
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeRemoved_mergesNeighbourSections() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 1, 1);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.remove(2, 1);
+    index.onItemRangeRemoved(2, 1);
+    index.refresh(adapter);
+
+    assertEquals(1, index.getSectionCount());
+    assertEquals(3, index.getSectionEnd(0));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeRemoved_everything() {
+    FakeAdapter adapter = new FakeAdapter(1, 2, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.remove(0, 3);
+    index.onItemRangeRemoved(0, 3);
+    index.refresh(adapter);
+
+    assertEquals(0, index.getItemCount());
+    assertEquals(0, index.getSectionCount());
+    assertFalse(index.isDirty());
+  }
+
+  @Test
+  public void onItemRangeChanged_rereadsChangedIds() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 1, 2, 2);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.set(1, 5);
+    index.onItemRangeChanged(1, 1);
+    assertEquals(2, index.getSectionCount());
+    index.refresh(adapter);
+
+    assertEquals(4, index.getSectionCount());
+    assertEquals(5L, index.getHeaderId(1));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeChanged_ofLastPositionOfSection() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.set(1, 2);
+    index.onItemRangeChanged(1, 1);
+    index.refresh(adapter);
+
+    assertEquals(2, index.getSectionCount());
+    assertEquals(1, index.getSectionStart(1));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void onItemRangeMoved_movesSection() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2, 3, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.move(0, 4, 2);
+    index.onItemRangeMoved(0, 4, 2);
+    index.refresh(adapter);
+
+    assertEquals(3, index.getSectionCount());
+    assertEquals(2L, index.getSectionId(0));
+    assertEquals(1L, index.getSectionId(2));
+    assertEquals(4, index.getSectionStart(2));
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void refresh_coalescesSeveralChanges() {
+    FakeAdapter adapter = new FakeAdapter(1, 1, 2, 2, 3, 3, 4, 4);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+
+    adapter.insert(7, 4);
+    index.onItemRangeInserted(7, 1);
+    adapter.remove(0, 3);
+    index.onItemRangeRemoved(0, 3);
+    adapter.set(2, 9);
+    index.onItemRangeChanged(2, 1);
+    index.refresh(adapter);
+
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void refresh_withoutChangesDoesNotReadTheAdapter() {
+    FakeAdapter adapter = new FakeAdapter(1, 2, 3);
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+    adapter.mReads = 0;
+
+    index.refresh(adapter);
+
+    assertEquals(0, adapter.mReads);
+  }
+
+  @Test
+  public void refresh_onlyReadsAroundTheChange() {
+    FakeAdapter adapter = new FakeAdapter();
+    for (int i = 0; i < 10000; i++) {
+      adapter.mIds.add((long) (i / 10));
+    }
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+    adapter.mReads = 0;
+
+    adapter.insert(5000, 500);
+    index.onItemRangeInserted(5000, 1);
+    index.refresh(adapter);
+
+    assertTrue(adapter.mReads < 10);
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  @Test
+  public void randomChanges_matchAFullRebuild() {
+    Random random = new Random(42);
+    FakeAdapter adapter = new FakeAdapter();
+    for (int i = 0; i < 200; i++) {
+      adapter.mIds.add((long) (i / 7));
+    }
+    SectionIndex index = SectionIndex.build(adapter, adapter.getItemCount());
+    for (int step = 0; step < 2000; step++) {
+      int size = adapter.getItemCount();
+      int operation = size == 0 ? 0 : random.nextInt(4);
+      if (operation == 0) {
+        int position = random.nextInt(size + 1);
+        int count = 1 + random.nextInt(5);
+        long id = random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+          adapter.mIds.add(position, id);
+        }
+        index.onItemRangeInserted(position, count);
+      } else if (operation == 1) {
+        int position = random.nextInt(size);
+        int count = 1 + random.nextInt(Math.min(5, size - position));
+        adapter.remove(position, count);
+        index.onItemRangeRemoved(position, count);
+      } else if (operation == 2) {
+        int position = random.nextInt(size);
+        int count = 1 + random.nextInt(Math.min(5, size - position));
+        for (int i = 0; i < count; i++) {
+          adapter.set(position + i, random.nextInt(6));
+        }
+        index.onItemRangeChanged(position, count);
+      } else {
+        int from = random.nextInt(size);
+        int count = 1 + random.nextInt(Math.min(3, size - from));
+        int to = random.nextInt(size - count + 1);
+        adapter.move(from, to, count);
+        index.onItemRangeMoved(from, to, count);
+      }
+      // refresh after a few changes at a time, like a draw after a batch of notifications
+      if (random.nextInt(3) == 0) {
+        index.refresh(adapter);
+        assertSameAsRebuilt(adapter, index);
+      }
+    }
+    index.refresh(adapter);
+    assertSameAsRebuilt(adapter, index);
+  }
+
+  private static void assertSameAsRebuilt(FakeAdapter adapter, SectionIndex index) {
+    SectionIndex expected = SectionIndex.build(adapter, adapter.getItemCount());
+    assertEquals(expected.getItemCount(), index.getItemCount());
+    assertEquals(expected.getSectionCount(), index.getSectionCount());
+    for (int section = 0; section < expected.getSectionCount(); section++) {
+      assertEquals(expected.getSectionStart(section), index.getSectionStart(section));
+      assertEquals(expected.getSectionId(section), index.getSectionId(section));
+    }
+  }
+
+  private static class FakeAdapter implements StickyRecyclerHeadersAdapter<RecyclerView.ViewHolder> {
+
+    final List<Long> mIds = new ArrayList<>();
+    int mReads;
+
+    FakeAdapter(long... ids) {
+      for (long id : ids) {
+        mIds.add(id);
+      }
+    }
+
+    @Override
+    public int getItemCount() {
+      return mIds.size();
+    }
+
+    void insert(int position, long... ids) {
+      for (int i = 0; i < ids.length; i++) {
+        mIds.add(position + i, ids[i]);
+      }
+    }
+
+    void remove(int position, int count) {
+      mIds.subList(position, position + count).clear();
+    }
+
+    void set(int position, long id) {
+      mIds.set(position, id);
+    }
+
+    void move(int from, int to, int count) {
+      List<Long> range = new ArrayList<>(mIds.subList(from, from + count));
+      remove(from, count);
+      mIds.addAll(to, range);
+    }
+
+    @Override
+    public long getHeaderId(int position) {
+      mReads++;
+      return mIds.get(position);
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateHeaderViewHolder(ViewGroup parent) {
+      return null;
+    }
+
+    @Override
+    public void onBindHeaderViewHolder(RecyclerView.ViewHolder holder, int position) {
+    }
+
+    @Override
+    public int getItemIndexInRow(int position) {
+      return 0;
+    }
+  }
+}
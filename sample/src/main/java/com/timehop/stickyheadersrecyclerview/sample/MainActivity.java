@@ -86,13 +86,6 @@ public class MainActivity extends AppCompatActivity {
         // Add decoration for dividers between list items
         recyclerView.addItemDecoration(new DividerDecoration(this));
 
-        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
-            @Override
-            public void onChanged() {
-                headersDecor.invalidateHeaders();
-            }
-        });
-
         // Add touch listeners
         StickyRecyclerHeadersTouchListener touchListener =
                 new StickyRecyclerHeadersTouchListener(recyclerView, headersDecor);